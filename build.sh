@@ -0,0 +1,44 @@
+#!/bin/sh
+#
+# Builds the project without an IDE, with the JDK tools only.
+#
+#   ./build.sh         compiles the sources into build/classes
+#   ./build.sh test    also compiles the checks in test/ and runs each of them
+#   ./build.sh jar     also packages the classes into build/symregression.jar, with Cli as the
+#                      main class. Cli's archive mode needs the classes in a jar
+#
+# Checks are the classes in test/ whose name ends in Test. Each has a main method that throws
+# an AssertionError on failure. They are run from the project directory, so they can read data/.
+
+set -e
+cd "$(dirname "$0")"
+
+JAVAC="javac --release 8 -Xlint:-options -encoding UTF-8"
+
+rm -rf build/classes
+mkdir -p build/classes
+$JAVAC -d build/classes src/symregression/*.java
+
+case "$1" in
+    "")
+        ;;
+    test)
+        rm -rf build/test-classes
+        mkdir -p build/test-classes
+        $JAVAC -cp build/classes -d build/test-classes test/symregression/*.java
+        for check in test/symregression/*Test.java; do
+            name=$(basename "$check" .java)
+            echo "INFO: Running $name"
+            java -ea -cp build/classes:build/test-classes "symregression.$name"
+        done
+        echo "INFO: All checks passed"
+        ;;
+    jar)
+        jar cfe build/symregression.jar symregression.Cli -C build/classes .
+        echo "INFO: Classes packaged into build/symregression.jar"
+        ;;
+    *)
+        echo "Usage: build.sh [test|jar]"
+        exit 1
+        ;;
+esac
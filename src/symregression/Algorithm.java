@@ -14,28 +14,74 @@ import java.util.Random;
 public class Algorithm {
 
     /* GA parameters */
-    // Probability of using the same gene from one of the parents
-    private static final double uniformRate = 0.7;
-    // Probability of mutating a gene
-    private static final double mutationRate = 0.2;
-    // Number of individuals selected for tournament selection
-    private static final int tournamentSize = 5;
-    // Determines whether the best individual is passed on to the next generation
-    private static final boolean elitism = true;
+    // Settings of each thread, so that runs with different settings can proceed concurrently
+    private static final ThreadLocal<GAConfig> config = new ThreadLocal<GAConfig>() {
+        @Override
+        protected GAConfig initialValue() {
+            return GAConfig.DEFAULT;
+        }
+    };
+    // Determines whether generations are evolved by ParetoEvolution, trading fitness against cost
+    private static volatile boolean multiObjective = false;
+
+    // Random generator of each thread. Runs that must be reproducible seed it with setSeed
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
 
     /* Public methods */
 
+    // Returns the random generator of the calling thread
+    static Random random() {
+        return random.get();
+    }
+
+    // Seeds the random generator of the calling thread, making the runs on it reproducible
+    public static void setSeed(long seed) {
+        random.set(new Random(seed));
+    }
+
+    // Makes the calling thread use the given random generator, e.g. to continue a run on another thread
+    static void setRandom(Random randomGenerator) {
+        random.set(randomGenerator);
+    }
+
+    // Returns the settings of the calling thread
+    public static GAConfig config() {
+        return config.get();
+    }
+
+    // Sets the settings used by the calling thread
+    public static void setConfig(GAConfig settings) {
+        config.set(settings);
+    }
+
+    // Enables or disables the multi-objective mode, in which evolvePopulation ranks individuals
+    // on fitness and evaluation cost together instead of on fitness alone
+    public static void setMultiObjective(boolean enabled) {
+        multiObjective = enabled;
+    }
+
     // Evolves a given population over one generation
     public static Population evolvePopulation(Population pop) throws Exception {
+        // Score the generation in one go where subexpressions can be shared
+        pop.evaluate();
+        if (multiObjective) {
+            return ParetoEvolution.evolvePopulation(pop);
+        }
         Population newPopulation = new Population(pop.size(), false);
+        GAConfig settings = config();
 
-        // If elitism is enabled, keep the best individual without changes
-        if (elitism) {
-            newPopulation.saveIndividual(0, pop.getFittest());
+        // If elitism is enabled, keep the best individual, refined by local search if enabled
+        if (settings.elitism) {
+            newPopulation.saveIndividual(0, elite(pop, settings));
         }
 
         // Determine the starting point for crossover operations based on elitism
-        int elitismOffset = elitism ? 1 : 0;
+        int elitismOffset = settings.elitism ? 1 : 0;
 
         // Apply crossover to the rest of the population
         for (int i = elitismOffset; i < pop.size(); i++) {
@@ -49,21 +95,26 @@ public class Algorithm {
         for (int i = elitismOffset; i < newPopulation.size(); i++) {
             mutate(newPopulation.getIndividual(i));
         }
+        if (settings.filterDuplicates) {
+            newPopulation.filterDuplicates(elitismOffset);
+        }
 
         return newPopulation;
     }
     
     // Overloaded method to evolve a population with a predefined individual
     public static Population evolvePopulation(Population pop, Individual predefinedIndividual) throws Exception {
+        pop.evaluate();
         Population newPopulation = new Population(pop.size(), predefinedIndividual);
+        GAConfig settings = config();
 
         // Keep the best individual if elitism is enabled
-        if (elitism) {
-            newPopulation.saveIndividual(0, pop.getFittest());
+        if (settings.elitism) {
+            newPopulation.saveIndividual(0, elite(pop, settings));
         }
 
         // Apply crossover and mutation as in the original evolvePopulation method
-        int elitismOffset = elitism ? 1 : 0;
+        int elitismOffset = settings.elitism ? 1 : 0;
         for (int i = elitismOffset; i < pop.size(); i++) {
             Individual indiv1 = tournamentSelection(pop);
             Individual indiv2 = tournamentSelection(pop);
@@ -74,16 +125,31 @@ public class Algorithm {
         for (int i = elitismOffset; i < newPopulation.size(); i++) {
             mutate(newPopulation.getIndividual(i));
         }
+        if (settings.filterDuplicates) {
+            newPopulation.filterDuplicates(elitismOffset);
+        }
 
         return newPopulation;
     }
 
-    // Combines two individuals to produce a new offspring
-    private static Individual crossover(Individual indiv1, Individual indiv2) {
-        Individual newSol = new Individual();
+    // The fittest individual of a population, improved by hill climbing when the settings ask for it
+    private static Individual elite(Population pop, GAConfig settings) throws Exception {
+        Individual fittest = pop.getFittest();
+        if (settings.localSearchSteps > 0) {
+            return LocalSearch.climb(fittest, settings.localSearchSteps);
+        }
+        return fittest;
+    }
+
+    // Combines two individuals to produce a new offspring. It has the length of the first parent,
+    // and takes the genes the second parent does not have from the first one
+    static Individual crossover(Individual indiv1, Individual indiv2) {
+        Individual newSol = new Individual(indiv1.size());
+        newSol.fitnessCalc = indiv1.fitnessCalc;
+        double uniformRate = config().uniformRate;
         // Loop through genes and decide from which parent to inherit each gene
-        for (int i = 0; i < 15; i++) {
-            if (Math.random() <= uniformRate) {
+        for (int i = 0; i < newSol.size(); i++) {
+            if (random().nextDouble() <= uniformRate || i >= indiv2.size()) {
                 newSol.setGene(i, indiv1.getGene(i));
             } else {
                 newSol.setGene(i, indiv2.getGene(i));
@@ -103,10 +169,11 @@ public class Algorithm {
     }
 
     // Randomly mutates an individual's genes to introduce variation
-    private static void mutate(Individual indiv) {
-        Random randomGenerator = new Random();
-        for (int i = 0; i < 15; i++) {
-            if (Math.random() <= mutationRate) {
+    static void mutate(Individual indiv) {
+        Random randomGenerator = random();
+        double mutationRate = config().mutationRate;
+        for (int i = 0; i < indiv.size(); i++) {
+            if (randomGenerator.nextDouble() <= mutationRate) {
                 // Generate a random gene and replace the current one
                 int gene = randomGenerator.nextInt(7);
                 indiv.setGene(i, gene);
@@ -116,11 +183,12 @@ public class Algorithm {
     
     // Selects individuals for crossover using tournament selection
     private static Individual tournamentSelection(Population pop) throws Exception {
+        int tournamentSize = config().tournamentSize;
         // Create a temporary population for the tournament
         Population tournament = new Population(tournamentSize, false);
         // Fill the tournament with random individuals from the population
         for (int i = 0; i < tournamentSize; i++) {
-            int randomId = (int) (Math.random() * pop.size());
+            int randomId = random().nextInt(pop.size());
             tournament.saveIndividual(i, pop.getIndividual(randomId));
         }
         // Return the fittest individual from the tournament
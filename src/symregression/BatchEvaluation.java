@@ -0,0 +1,115 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Arrays;
+
+/**
+ * Scores several solutions on a dataset in one pass over its rows.
+ *
+ * Scoring the solutions one after the other reads the whole dataset once per solution, which on
+ * datasets larger than the processor caches means reading it from memory every time. Here the rows
+ * are read in blocks of BLOCK_ROWS, small enough to stay in the L1 and L2 caches, and every solution
+ * is evaluated on a block before the next one is read, with one Pearson accumulator per solution.
+ * The base measure scores of a block are also converted to BigRational values once, by the first
+ * solution that uses them, for all solutions instead of once per solution.
+ *
+ * Rows are added to each accumulator in dataset order, so the correlations are exactly those
+ * of CompiledGenome.correlate.
+ */
+public class BatchEvaluation {
+
+    // Rows read and converted at a time: their doubles and BigRational values take a few tens of KB
+    static final int BLOCK_ROWS = 256;
+
+    /**
+     * Compute the correlation of several solutions on a dataset.
+     * @param genomes The solutions, compiled for the dataset.
+     * @param data The dataset.
+     * @param budget The limits on the evaluation of each solution, or null for none.
+     * @return The Pearson correlation of each solution, or NaN for the solutions that went over the budget.
+     */
+    public static double[] correlate(CompiledGenome[] genomes, Dataset data, EvaluationBudget budget) {
+        return correlate(genomes, data, budget, new EvaluationBudget.Exceeded[genomes.length]);
+    }
+
+    /**
+     * Compute the correlation of several solutions on a dataset, reporting why solutions went over the budget.
+     * @param genomes The solutions, compiled for the dataset.
+     * @param data The dataset.
+     * @param budget The limits on the evaluation of each solution, or null for none.
+     * @param exceeded Receives, for each solution that went over the budget, the exception it threw.
+     * @return The Pearson correlation of each solution, or NaN for the solutions that went over the budget.
+     */
+    static double[] correlate(CompiledGenome[] genomes, Dataset data, EvaluationBudget budget, EvaluationBudget.Exceeded[] exceeded) {
+        Model.PearsonAccumulator[] pearson = new Model.PearsonAccumulator[genomes.length];
+        EvaluationBudget.Meter[] meters = new EvaluationBudget.Meter[genomes.length];
+        // Value of the solutions that do not depend on the row, computed once
+        double[] constants = new double[genomes.length];
+        for (int g = 0; g < genomes.length; g++) {
+            pearson[g] = new Model.PearsonAccumulator();
+            if (genomes[g].isConstant()) {
+                constants[g] = genomes[g].evaluate((double[]) null);
+            } else if (budget != null) {
+                meters[g] = budget.start(data.size());
+            }
+        }
+
+        // Rows of the current block: shared rows on the heap, or buffers filled from off-heap columns
+        double[][] buffers = new double[BLOCK_ROWS][Dataset.FEATURES];
+        double[][] rows = new double[BLOCK_ROWS][];
+        double[] judgements = new double[BLOCK_ROWS];
+        BigRational[][] variables = new BigRational[BLOCK_ROWS][Dataset.FEATURES];
+        for (int start = 0; start < data.size(); start += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, data.size() - start);
+            for (int r = 0; r < count; r++) {
+                rows[r] = data.getRow(start + r, buffers[r]);
+                judgements[r] = data.getJudgement(start + r);
+                // Converted by the first solution that uses them
+                Arrays.fill(variables[r], null);
+            }
+            for (int g = 0; g < genomes.length; g++) {
+                if (exceeded[g] != null) continue;
+                if (genomes[g].isConstant()) {
+                    for (int r = 0; r < count; r++) {
+                        pearson[g].add(judgements[r], constants[g]);
+                    }
+                    continue;
+                }
+                try {
+                    for (int r = 0; r < count; r++) {
+                        pearson[g].add(judgements[r], genomes[g].evaluate(rows[r], variables[r], meters[g]));
+                    }
+                } catch (EvaluationBudget.Exceeded e) {
+                    exceeded[g] = e;
+                }
+            }
+        }
+
+        double[] correlations = new double[genomes.length];
+        for (int g = 0; g < genomes.length; g++) {
+            correlations[g] = exceeded[g] != null ? Double.NaN : pearson[g].result();
+        }
+        return correlations;
+    }
+
+    /**
+     * Compute the correlation of several solutions on a dataset, without limits.
+     * @param sols The genes of each solution.
+     * @param data The dataset.
+     * @return The Pearson correlation of each solution.
+     */
+    public static double[] correlate(int[][] sols, Dataset data) {
+        CompiledGenome[] genomes = new CompiledGenome[sols.length];
+        for (int g = 0; g < sols.length; g++) {
+            genomes[g] = CompiledGenome.compile(sols[g], data);
+        }
+        return correlate(genomes, data, null);
+    }
+}
@@ -18,20 +18,43 @@ public class BigRational extends Number implements Comparable<BigRational>
 	 * 
 	 */
   private static final long serialVersionUID = 1L;
-  public final static BigRational ZERO = new BigRational(false, BigInteger.ZERO, BigInteger.ONE);
-  public final static BigRational ONE = new BigRational(false, BigInteger.ONE, BigInteger.ONE);
- 
+  public final static BigRational ZERO = new BigRational(false, 0L, 1L);
+  public final static BigRational ONE = new BigRational(false, 1L, 1L);
+  private final static long[] LONG_TEN_POWERS = {
+    1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+    10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+    1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L };
+ 
+  // A value whose numerator and denominator both fit in a long is held in smallNumerator and
+  // smallDenominator, and arithmetic between two such values is done on primitives, falling back
+  // to BigInteger when a result overflows. The choice is canonical: every value that fits is small,
+  // so equals can compare the fields of the same representation.
   private final boolean isNegative;
-  private final BigInteger numerator;
-  private final BigInteger denominator;
-  private final int hashCode;
+  private final boolean isSmall;
+  private final long smallNumerator;
+  private final long smallDenominator;
+  // Always set for large values, created on first use for small ones
+  private BigInteger numerator;
+  private BigInteger denominator;
+  // Computed on first use, 0 until then
+  private int hashCode;
+ 
+  private BigRational(boolean isNegative, long nonNegativeNumerator, long positiveDenominator)
+  {
+    this.isNegative = isNegative;
+    this.isSmall = true;
+    this.smallNumerator = nonNegativeNumerator;
+    this.smallDenominator = positiveDenominator;
+  }
  
   private BigRational(boolean isNegative, BigInteger nonNegativeNumerator, BigInteger nonNegativeDenominator)
   {
     this.isNegative = isNegative;
+    this.isSmall = fitsInLong(nonNegativeNumerator) && fitsInLong(nonNegativeDenominator);
+    this.smallNumerator = isSmall ? nonNegativeNumerator.longValue() : 0;
+    this.smallDenominator = isSmall ? nonNegativeDenominator.longValue() : 0;
     this.numerator = nonNegativeNumerator;
     this.denominator = nonNegativeDenominator;
-    this.hashCode = computeHashCode(isNegative, nonNegativeNumerator, nonNegativeDenominator);
   }
  
   private BigRational(BigInteger numerator, BigInteger denominator, boolean ignoreComponentSigns, boolean forcedSign)
@@ -66,19 +89,28 @@ public class BigRational extends Number implements Comparable<BigRational>
       }
     }
     this.isNegative = isNegative;
+    this.isSmall = fitsInLong(numerator) && fitsInLong(denominator);
+    this.smallNumerator = isSmall ? numerator.longValue() : 0;
+    this.smallDenominator = isSmall ? denominator.longValue() : 0;
     this.numerator = numerator;
     this.denominator = denominator;
-    this.hashCode = computeHashCode(isNegative, numerator, denominator);
   }
  
   public BigRational(BigInteger numerator, BigInteger denominator)
   {  this(numerator, denominator, false, false);  }
  
   public BigRational abs()
-  {  return isNegative ? new BigRational(false, numerator, denominator) : this;  }
+  {  return isNegative ? withSign(false) : this;  }
  
   public BigRational add(BigRational br)
   {
+    if (isSmall && br.isSmall)
+    {
+      try
+      {  return addSmall(signedNumerator(), smallDenominator, br.signedNumerator(), br.smallDenominator);  }
+      catch (ArithmeticException e)
+      {  /* Overflow, use BigInteger arithmetic */  }
+    }
     if (isNegative == br.isNegative)
       return addIgnoreNegatives(isNegative, this, br);
     if (isNegative)
@@ -90,18 +122,29 @@ public class BigRational extends Number implements Comparable<BigRational>
   {
     if (isNegative != br.isNegative)
       return isNegative ? -1 : 1;
+    if (isSmall && br.isSmall)
+    {
+      try
+      {  return Long.compare(Math.multiplyExact(signedNumerator(), br.smallDenominator), Math.multiplyExact(br.signedNumerator(), smallDenominator));  }
+      catch (ArithmeticException e)
+      {  /* Overflow, use BigInteger arithmetic */  }
+    }
     return subtract(br).signum();
   }
  
   public BigRational decrement()
   {
     if (isNegative)
-      return new BigRational(numerator.add(denominator), denominator, true, true);
-    return new BigRational(numerator.subtract(denominator), denominator, true, (numerator.compareTo(denominator) < 0));
+      return new BigRational(numerator().add(denominator()), denominator(), true, true);
+    return new BigRational(numerator().subtract(denominator()), denominator(), true, (numerator().compareTo(denominator()) < 0));
   }
  
   public BigInteger denominator()
-  {  return denominator;  }
+  {
+    if (denominator == null)
+      denominator = BigInteger.valueOf(smallDenominator);
+    return denominator;
+  }
  
   public BigRational divide(BigInteger bi)
   {
@@ -109,7 +152,7 @@ public class BigRational extends Number implements Comparable<BigRational>
     if (isNegative)
       bi = bi.negate();
     isNegative = (isNegative != this.isNegative);
-    return new BigRational(numerator, denominator.multiply(bi), true, isNegative);
+    return new BigRational(numerator(), denominator().multiply(bi), true, isNegative);
   }
  
   public BigRational divide(BigRational divisor)
@@ -123,6 +166,10 @@ public class BigRational extends Number implements Comparable<BigRational>
     if ((o == null) || !(o instanceof BigRational))
       return false;
     BigRational br = (BigRational)o;
+    if (isSmall != br.isSmall)
+      return false;
+    if (isSmall)
+      return (isNegative == br.isNegative) && (smallNumerator == br.smallNumerator) && (smallDenominator == br.smallDenominator);
     return (isNegative == br.isNegative) && numerator.equals(br.numerator) && denominator.equals(br.denominator);
   }
  
@@ -130,23 +177,27 @@ public class BigRational extends Number implements Comparable<BigRational>
   {  return toBigDecimal(9, RoundingMode.HALF_EVEN).floatValue();  }
  
   public int hashCode()
-  {  return hashCode;  }
+  {
+    if (hashCode == 0)
+      hashCode = computeHashCode(isNegative, numerator(), denominator());
+    return hashCode;
+  }
  
   public BigRational increment()
   {
     if (!isNegative)
-      return new BigRational(numerator.add(denominator), denominator, true, false);
-    return new BigRational(numerator.subtract(denominator), denominator, true, (numerator.compareTo(denominator) > 0));
+      return new BigRational(numerator().add(denominator()), denominator(), true, false);
+    return new BigRational(numerator().subtract(denominator()), denominator(), true, (numerator().compareTo(denominator()) > 0));
   }
  
   public int intValue()
   {  return toBigDecimal(12, RoundingMode.HALF_EVEN).intValue();  }
  
   public boolean isWholeNumber()
-  {  return denominator.equals(BigInteger.ONE);  }
+  {  return isSmall ? (smallDenominator == 1) : denominator.equals(BigInteger.ONE);  }
  
   public boolean isZero()
-  {  return numerator.equals(BigInteger.ZERO);  }
+  {  return isSmall && (smallNumerator == 0);  }
  
   public long longValue()
   {  return toBigDecimal(21, RoundingMode.HALF_EVEN).longValue();  }
@@ -159,11 +210,11 @@ public class BigRational extends Number implements Comparable<BigRational>
  
   public Object[] mixedFraction()
   {
-    BigInteger[] dar = numerator.divideAndRemainder(denominator);
+    BigInteger[] dar = numerator().divideAndRemainder(denominator());
     BigInteger whole = dar[0];
     if (isNegative)
       whole = whole.negate();
-    BigRational fraction = new BigRational(dar[1], denominator, true, isNegative);
+    BigRational fraction = new BigRational(dar[1], denominator(), true, isNegative);
     return new Object[] { whole, fraction };
   }
  
@@ -173,13 +224,20 @@ public class BigRational extends Number implements Comparable<BigRational>
     if (isNegative)
       bi = bi.negate();
     isNegative = (isNegative != this.isNegative);
-    return new BigRational(numerator.multiply(bi), denominator, true, isNegative);
+    return new BigRational(numerator().multiply(bi), denominator(), true, isNegative);
   }
  
   public BigRational multiply(BigRational br)
   {
-    BigInteger numerator = this.numerator.multiply(br.numerator);
-    BigInteger denominator = this.denominator.multiply(br.denominator);
+    if (isSmall && br.isSmall)
+    {
+      try
+      {  return multiplySmall(isNegative != br.isNegative, smallNumerator, smallDenominator, br.smallNumerator, br.smallDenominator);  }
+      catch (ArithmeticException e)
+      {  /* Overflow, use BigInteger arithmetic */  }
+    }
+    BigInteger numerator = this.numerator().multiply(br.numerator());
+    BigInteger denominator = this.denominator().multiply(br.denominator());
     return new BigRational(numerator, denominator, true, isNegative != br.isNegative);
   }
  
@@ -187,16 +245,29 @@ public class BigRational extends Number implements Comparable<BigRational>
   {
     if (isZero())
       return this;
-    return new BigRational(!isNegative, numerator, denominator);
+    return withSign(!isNegative);
   }
  
   public BigInteger numerator()
-  {  return numerator;  }
+  {
+    if (numerator == null)
+      numerator = BigInteger.valueOf(smallNumerator);
+    return numerator;
+  }
  
   public BigRational pow(int n)
   {
-    BigInteger numerator = this.numerator.pow(n);
-    BigInteger denominator = this.denominator.pow(n);
+    if (isSmall && (n >= 0))
+    {
+      if (smallNumerator == 0)
+        return (n == 0) ? ONE : ZERO;
+      try
+      {  return new BigRational(isNegative ? ((n & 1) != 0) : false, powExact(smallNumerator, n), powExact(smallDenominator, n));  }
+      catch (ArithmeticException e)
+      {  /* Overflow, use BigInteger arithmetic */  }
+    }
+    BigInteger numerator = this.numerator().pow(n);
+    BigInteger denominator = this.denominator().pow(n);
     return new BigRational(numerator, denominator, true, isNegative ? ((n & 1) != 0) : false);
   }
  
@@ -204,6 +275,8 @@ public class BigRational extends Number implements Comparable<BigRational>
   {
     if (isZero())
       throw new ArithmeticException("Can not calculate reciprocal of zero");
+    if (isSmall)
+      return new BigRational(isNegative, smallDenominator, smallNumerator);
     return new BigRational(isNegative, denominator, numerator);
   }
  
@@ -216,6 +289,13 @@ public class BigRational extends Number implements Comparable<BigRational>
  
   public BigRational subtract(BigRational br)
   {
+    if (isSmall && br.isSmall)
+    {
+      try
+      {  return addSmall(signedNumerator(), smallDenominator, -br.signedNumerator(), br.smallDenominator);  }
+      catch (ArithmeticException e)
+      {  /* Overflow, use BigInteger arithmetic */  }
+    }
     if (isNegative != br.isNegative)
       return addIgnoreNegatives(isNegative, this, br);
     if (isNegative)
@@ -225,8 +305,8 @@ public class BigRational extends Number implements Comparable<BigRational>
  
   public BigDecimal toBigDecimal(int desiredPrecision, RoundingMode roundingMode)
   {
-    BigDecimal bdNumerator = new BigDecimal(numerator);
-    BigDecimal bdDenominator = new BigDecimal(denominator);
+    BigDecimal bdNumerator = isSmall ? BigDecimal.valueOf(smallNumerator) : new BigDecimal(numerator);
+    BigDecimal bdDenominator = isSmall ? BigDecimal.valueOf(smallDenominator) : new BigDecimal(denominator);
     int resultScale = bdNumerator.scale() - bdDenominator.scale() - bdNumerator.precision() + bdDenominator.precision() + desiredPrecision;
     BigDecimal bigDecimalValue = bdNumerator.divide(bdDenominator, resultScale, roundingMode);
     if (bigDecimalValue.precision() > desiredPrecision)
@@ -238,7 +318,7 @@ public class BigRational extends Number implements Comparable<BigRational>
  
   public BigDecimal toBigDecimalExact()
   {
-    BigDecimal bigDecimalValue = new BigDecimal(numerator).divide(new BigDecimal(denominator));
+    BigDecimal bigDecimalValue = new BigDecimal(numerator()).divide(new BigDecimal(denominator()));
     if (isNegative)
       bigDecimalValue = bigDecimalValue.negate();
     return bigDecimalValue;
@@ -246,15 +326,25 @@ public class BigRational extends Number implements Comparable<BigRational>
  
   public String toString()
   {
+    String numerator = isSmall ? Long.toString(smallNumerator) : this.numerator.toString();
     if (isWholeNumber())
     {
       if (isNegative)
-        return "-" + numerator.toString();
-      return numerator.toString();
+        return "-" + numerator;
+      return numerator;
     }
+    String denominator = isSmall ? Long.toString(smallDenominator) : this.denominator.toString();
     if (isNegative)
-      return "-" + numerator.toString() + "/" + denominator.toString();
-    return numerator.toString() + "/" + denominator.toString();
+      return "-" + numerator + "/" + denominator;
+    return numerator + "/" + denominator;
+  }
+ 
+  // Number of bits of the larger of numerator and denominator
+  int bitLength()
+  {
+    if (isSmall)
+      return 64 - Long.numberOfLeadingZeros(Math.max(smallNumerator, smallDenominator));
+    return Math.max(numerator.bitLength(), denominator.bitLength());
   }
  
   private static int computeHashCode(boolean isNegative, BigInteger numerator, BigInteger denominator)
@@ -265,21 +355,99 @@ public class BigRational extends Number implements Comparable<BigRational>
     return c;
   }
  
+  private long signedNumerator()
+  {  return isNegative ? -smallNumerator : smallNumerator;  }
+ 
+  private BigRational withSign(boolean isNegative)
+  {
+    if (isSmall)
+      return new BigRational(isNegative, smallNumerator, smallDenominator);
+    return new BigRational(isNegative, numerator, denominator);
+  }
+ 
+  private static boolean fitsInLong(BigInteger nonNegative)
+  {  return nonNegative.bitLength() < 64;  }
+ 
+  private static long gcd(long a, long b)
+  {
+    while (b != 0)
+    {
+      long t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+ 
+  // Raises a non-negative long to a non-negative power, throwing an ArithmeticException on overflow
+  private static long powExact(long base, int exponent)
+  {
+    long result = 1;
+    while (exponent > 0)
+    {
+      if ((exponent & 1) != 0)
+        result = Math.multiplyExact(result, base);
+      exponent >>= 1;
+      if (exponent > 0)
+        base = Math.multiplyExact(base, base);
+    }
+    return result;
+  }
+ 
+  // Reduces a signed numerator and denominator given as longs
+  private static BigRational reduce(long numerator, long denominator)
+  {
+    if (denominator == 0)
+      throw new ArithmeticException("Denominator is zero");
+    if ((numerator == Long.MIN_VALUE) || (denominator == Long.MIN_VALUE))
+      return new BigRational(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+    if (numerator == 0)
+      return ZERO;
+    boolean isNegative = (numerator < 0) != (denominator < 0);
+    numerator = Math.abs(numerator);
+    denominator = Math.abs(denominator);
+    long gcd = gcd(numerator, denominator);
+    return new BigRational(isNegative, numerator / gcd, denominator / gcd);
+  }
+ 
+  // Sum of two small values given with signed numerators, throwing an ArithmeticException on overflow
+  private static BigRational addSmall(long numerator1, long denominator1, long numerator2, long denominator2)
+  {
+    if (denominator1 == denominator2)
+      return reduce(Math.addExact(numerator1, numerator2), denominator1);
+    long gcd = gcd(denominator1, denominator2);
+    long numerator = Math.addExact(Math.multiplyExact(numerator1, denominator2 / gcd), Math.multiplyExact(numerator2, denominator1 / gcd));
+    return reduce(numerator, Math.multiplyExact(denominator1, denominator2 / gcd));
+  }
+ 
+  // Product of two small values, throwing an ArithmeticException on overflow. Cancelling across
+  // before multiplying keeps the result reduced
+  private static BigRational multiplySmall(boolean isNegative, long numerator1, long denominator1, long numerator2, long denominator2)
+  {
+    if ((numerator1 == 0) || (numerator2 == 0))
+      return ZERO;
+    long gcd1 = gcd(numerator1, denominator2);
+    long gcd2 = gcd(numerator2, denominator1);
+    long numerator = Math.multiplyExact(numerator1 / gcd1, numerator2 / gcd2);
+    long denominator = Math.multiplyExact(denominator1 / gcd2, denominator2 / gcd1);
+    return new BigRational(isNegative, numerator, denominator);
+  }
+ 
   private static BigRational addIgnoreNegatives(boolean resultIsNegative, BigRational first, BigRational second)
   {
     first = first.abs();
     second = second.abs();
     BigInteger numerator = null;
     BigInteger denominator = null;
-    if (first.denominator.equals(second.denominator))
+    if (first.denominator().equals(second.denominator()))
     {
-      numerator = first.numerator.add(second.numerator);
-      denominator = first.denominator;
+      numerator = first.numerator().add(second.numerator());
+      denominator = first.denominator();
     }
     else
     {
-      numerator = first.numerator.multiply(second.denominator).add(second.numerator.multiply(first.denominator));
-      denominator = first.denominator.multiply(second.denominator);
+      numerator = first.numerator().multiply(second.denominator()).add(second.numerator().multiply(first.denominator()));
+      denominator = first.denominator().multiply(second.denominator());
     }
     return new BigRational(numerator, denominator, true, resultIsNegative);
   }
@@ -290,15 +458,15 @@ public class BigRational extends Number implements Comparable<BigRational>
     second = second.abs();
     BigInteger numerator = null;
     BigInteger denominator = null;
-    if (first.denominator.equals(second.denominator))
+    if (first.denominator().equals(second.denominator()))
     {
-      numerator = first.numerator.subtract(second.numerator);
-      denominator = first.denominator;
+      numerator = first.numerator().subtract(second.numerator());
+      denominator = first.denominator();
     }
     else
     {
-      numerator = first.numerator.multiply(second.denominator).subtract(second.numerator.multiply(first.denominator));
-      denominator = first.denominator.multiply(second.denominator);
+      numerator = first.numerator().multiply(second.denominator()).subtract(second.numerator().multiply(first.denominator()));
+      denominator = first.denominator().multiply(second.denominator());
     }
     return new BigRational(numerator, denominator);
   }
@@ -307,17 +475,19 @@ public class BigRational extends Number implements Comparable<BigRational>
   {  return valueOf(integerValue, 1);  }
  
   public static BigRational valueOf(int numerator, int denominator)
-  {  return new BigRational(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));  }
+  {  return reduce(numerator, denominator);  }
  
   public static BigRational valueOf(long longValue)
   {  return valueOf(longValue, 1);  }
  
   public static BigRational valueOf(long numerator, long denominator)
-  {  return new BigRational(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));  }
+  {  return reduce(numerator, denominator);  }
  
   public static BigRational valueOf(BigDecimal bigDecimalValue)
   {
     int scale = bigDecimalValue.scale();
+    if ((scale >= 0) && (scale < LONG_TEN_POWERS.length) && (bigDecimalValue.precision() < LONG_TEN_POWERS.length))
+      return reduce(bigDecimalValue.unscaledValue().longValue(), LONG_TEN_POWERS[scale]);
     BigInteger numerator = bigDecimalValue.unscaledValue();
     if (scale <= 0)
     {
@@ -0,0 +1,191 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.BinaryOperator;
+import symregression.Model.Expression;
+
+/**
+ * Rewrites expressions into a normal form, so that genomes encoding the same function
+ * get the same canonical form and can share one fitness evaluation.
+ *
+ * Only rewrites that are exact under BigRational arithmetic are applied:
+ * - sums, products, maxima and minima are flattened and their operands sorted
+ * - repeated operands of a maximum or minimum are dropped
+ * - "x + 0", "x - 0", "x * 1", "x / 1" and "x p 1" become "x"
+ * - "x * 0" becomes 0 and "x p 0" becomes 1
+ * The last two would hide a failing row (e.g. a division by zero inside x), so they are
+ * only applied when x cannot fail.
+ */
+public class Canonicalizer {
+
+    private static final BigRational ZERO = BigRational.ZERO;
+    private static final BigRational ONE = BigRational.ONE;
+
+    // Orders operands by their printed form, constants first so the Optimizer can combine them
+    private static final Comparator<Expression> ORDER = new Comparator<Expression>() {
+        @Override
+        public int compare(Expression e1, Expression e2) {
+            boolean constant1 = e1 instanceof Model.Number;
+            boolean constant2 = e2 instanceof Model.Number;
+            if (constant1 != constant2) return constant1 ? -1 : 1;
+            return e1.toString().compareTo(e2.toString());
+        }
+    };
+
+    /* Public methods */
+
+    // Returns the canonical form of the expression encoded by the genes of a solution,
+    // after constant subtrees have been folded
+    public static String canonicalForm(int[] sol) {
+        return CompiledGenome.compile(sol).toString();
+    }
+
+    // Returns a 64-bit hash (FNV-1a) of a canonical form
+    public static long hash(String canonicalForm) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonicalForm.length(); i++) {
+            hash ^= canonicalForm.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Rewrites an expression into its normal form
+    public static Expression canonicalize(Expression expression) {
+        if (!(expression instanceof BinaryExpression)) {
+            return expression;
+        }
+        BinaryExpression binary = (BinaryExpression) expression;
+        Expression left = canonicalize(binary.leftOperand);
+        Expression right = canonicalize(binary.rightOperand);
+
+        switch (binary.operator) {
+            case ADD:
+            case MUL:
+            case MAX:
+            case MIN:
+                return canonicalizeAssociative(binary.operator, left, right);
+            case SUB:
+                if (isConstant(right, ZERO)) return left;
+                break;
+            case DIV:
+                if (isConstant(right, ONE)) return left;
+                break;
+            case POW:
+                if (right instanceof Model.Number) {
+                    int exponent = right.eval().intValue();
+                    if (exponent == 1) return left;
+                    if (exponent == 0 && cannotFail(left)) return new Model.Number(ONE);
+                }
+                break;
+            default:
+                break;
+        }
+        return new BinaryExpression(left, binary.operator, right);
+    }
+
+    // Whether evaluating the expression can never throw, whatever the row
+    public static boolean cannotFail(Expression expression) {
+        if (expression instanceof Model.Number || expression instanceof Model.Variable) {
+            return true;
+        }
+        if (!(expression instanceof BinaryExpression)) {
+            return false; // Glued operands may not be valid numbers
+        }
+        BinaryExpression binary = (BinaryExpression) expression;
+        switch (binary.operator) {
+            case DIV:
+                // Only a constant, non-zero divisor is known to be safe
+                return cannotFail(binary.leftOperand) && binary.rightOperand instanceof Model.Number
+                        && !binary.rightOperand.eval().isZero();
+            case POW:
+                // Negative exponents throw, so only constant non-negative ones are safe
+                return cannotFail(binary.leftOperand) && binary.rightOperand instanceof Model.Number
+                        && binary.rightOperand.eval().intValue() >= 0;
+            default:
+                return cannotFail(binary.leftOperand) && cannotFail(binary.rightOperand);
+        }
+    }
+
+    /* Helpers */
+
+    // Flattens a chain of one associative and commutative operator, simplifies and sorts its operands,
+    // and rebuilds it as a left-leaning chain
+    private static Expression canonicalizeAssociative(BinaryOperator operator, Expression left, Expression right) {
+        List<Expression> operands = new ArrayList<Expression>();
+        flatten(operator, left, operands);
+        flatten(operator, right, operands);
+
+        if (operator == BinaryOperator.ADD) {
+            removeConstants(operands, ZERO);
+            if (operands.isEmpty()) return new Model.Number(ZERO);
+        } else if (operator == BinaryOperator.MUL) {
+            removeConstants(operands, ONE);
+            if (operands.isEmpty()) return new Model.Number(ONE);
+            if (hasConstant(operands, ZERO) && allCannotFail(operands)) return new Model.Number(ZERO);
+        } else {
+            // max(x, x) = x and min(x, x) = x
+            Map<String, Expression> distinct = new LinkedHashMap<String, Expression>();
+            for (Expression operand : operands) {
+                distinct.put(operand.toString(), operand);
+            }
+            operands = new ArrayList<Expression>(distinct.values());
+        }
+
+        Collections.sort(operands, ORDER);
+        Expression result = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+            result = new BinaryExpression(result, operator, operands.get(i));
+        }
+        return result;
+    }
+
+    // Collects the operands of a chain of the given operator
+    private static void flatten(BinaryOperator operator, Expression expression, List<Expression> operands) {
+        if (expression instanceof BinaryExpression && ((BinaryExpression) expression).operator == operator) {
+            flatten(operator, ((BinaryExpression) expression).leftOperand, operands);
+            flatten(operator, ((BinaryExpression) expression).rightOperand, operands);
+        } else {
+            operands.add(expression);
+        }
+    }
+
+    private static boolean isConstant(Expression expression, BigRational value) {
+        return expression instanceof Model.Number && expression.eval().equals(value);
+    }
+
+    private static void removeConstants(List<Expression> operands, BigRational value) {
+        for (int i = operands.size() - 1; i >= 0; i--) {
+            if (isConstant(operands.get(i), value)) operands.remove(i);
+        }
+    }
+
+    private static boolean hasConstant(List<Expression> operands, BigRational value) {
+        for (Expression operand : operands) {
+            if (isConstant(operand, value)) return true;
+        }
+        return false;
+    }
+
+    private static boolean allCannotFail(List<Expression> operands) {
+        for (Expression operand : operands) {
+            if (!cannotFail(operand)) return false;
+        }
+        return true;
+    }
+}
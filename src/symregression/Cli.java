@@ -0,0 +1,364 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command-line front end for short jobs, instead of the fixed scenario of GA.main.
+ *
+ * Commands:
+ *   train <dataset> <genome file> [name=value ...]
+ *       evolves solutions on a dataset and writes the hall of fame to the genome file
+ *   transfer <genome file> <dataset> <genome file> [name=value ...]
+ *       starts from the solutions of the first genome file, evolves them on the dataset
+ *       and writes the new hall of fame to the second one
+ *   score <genome file> <dataset>
+ *       prints the score of the first solution on every row of the dataset
+ *   validate <genome file> <dataset> [<dataset> ...]
+ *       prints the correlation of every solution with the judgements of each dataset
+ *   archive <archive file> <command> [args ...]
+ *       runs a command in a new JVM with an AppCDS archive of the classes it loads
+ *
+ * Datasets are data files, or binary files written by Dataset.save when their name ends in ".bin",
+ * which are mapped instead of parsed. GA settings are given as name=value, see GAConfig. Training
+ * also takes these run options as name=value:
+ *   generations=N          stops after at most N generations
+ *   sharing=true           evaluates each generation together, see FitnessCalc.setSharing
+ *   batching=true          evaluates each generation in one pass, see FitnessCalc.setBatching
+ *   subtreeCache=BYTES     keeps subexpression values across generations, see FitnessCalc.setSubtreeCache
+ *   fingerprinting=true    pre-screens solutions on a probe sample, see FitnessCalc.setFingerprinting
+ *   parallelism=N          evaluates each solution on N threads, see FitnessCalc.setParallelism
+ *   localSearchThreads=N   scores the neighbours of the local search on N threads
+ *   multiObjective=true    ranks on fitness and evaluation cost, see Algorithm.setMultiObjective
+ *   quantized=true         keeps the dataset as 16-bit steps, see Dataset.quantize
+ *   front=FILE             writes the first Pareto front of the last population to FILE
+ *
+ * Every command reports the time from the start of the JVM to its first result. In archive mode
+ * the first run writes the archive when its JVM exits (JDK 13 or later), and later runs map the
+ * archived classes instead of loading and verifying them again. The same runs keep a binary copy
+ * of each text dataset next to the archive, so later runs map it instead of parsing it. Archives
+ * only hold classes loaded from jar files, and belong to the JVM and class path they were written
+ * with; the JVM ignores them otherwise. "./build.sh jar" packages the classes into
+ * build/symregression.jar for this, e.g.
+ *   java -cp build/symregression.jar symregression.Cli archive cli.jsa validate genomes.txt data/rg.txt
+ */
+public class Cli {
+
+    // System property naming the directory where archive mode keeps binary copies of datasets
+    static final String DATASET_CACHE = "symregression.datasetCache";
+
+    // Wall clock time at which the first result was printed, or 0 before that
+    private static long firstResult = 0;
+
+    // Run options of train and transfer, see settings
+    private static boolean quantized = false;
+    private static String frontFile = null;
+    private static ForkJoinPool pool = null;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+        int status = run(args);
+        reportFirstResult();
+        System.exit(status);
+    }
+
+    // Runs a command and returns its exit status
+    static int run(String[] args) throws Exception {
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        int status;
+        switch (args[0]) {
+            case "train":
+                status = train(rest);
+                break;
+            case "transfer":
+                status = transfer(rest);
+                break;
+            case "score":
+                status = score(rest);
+                break;
+            case "validate":
+                status = validate(rest);
+                break;
+            case "archive":
+                status = archive(rest);
+                break;
+            default:
+                usage();
+                status = 2;
+                break;
+        }
+        return status;
+    }
+
+    /* Commands */
+
+    static int train(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            return 2;
+        }
+        Termination termination = Termination.standard();
+        GAConfig config = settings(Arrays.copyOfRange(args, 2, args.length), termination);
+        Algorithm.setConfig(config);
+        try {
+            GA.loadData(dataset(args[0]));
+            Population last = GA.evolvePopulation(GA.initializePopulation(config.populationSize), termination);
+            return finish(args[1], last);
+        } finally {
+            release();
+        }
+    }
+
+    static int transfer(String[] args) throws Exception {
+        if (args.length < 3) {
+            usage();
+            return 2;
+        }
+        List<int[]> solutions = HallOfFame.load(args[0]);
+        Termination termination = Termination.standard();
+        GAConfig config = settings(Arrays.copyOfRange(args, 3, args.length), termination);
+        Algorithm.setConfig(config);
+        try {
+            GA.loadData(dataset(args[1]));
+            Population last = GA.evolvePopulation(GA.initializePopulation(config.populationSize, solutions), termination);
+            return finish(args[2], last);
+        } finally {
+            release();
+        }
+    }
+
+    static int score(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return 2;
+        }
+        CompiledGenome genome = CompiledGenome.compile(HallOfFame.load(args[0]).get(0));
+        Dataset data = dataset(args[1]);
+        double[] buffer = new double[Dataset.FEATURES];
+        StringBuilder out = new StringBuilder();
+        for (int a = 0; a < data.size(); a++) {
+            out.append(genome.evaluate(data.getRow(a, buffer))).append('\n');
+            if (a == 0) {
+                // Flush the first score on its own, so its time is the time to first result
+                System.out.print(out);
+                out.setLength(0);
+                markResult();
+            }
+        }
+        System.out.print(out);
+        return 0;
+    }
+
+    static int validate(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return 2;
+        }
+        List<int[]> solutions = HallOfFame.load(args[0]);
+        for (int d = 1; d < args.length; d++) {
+            Dataset data = dataset(args[d]);
+            for (int i = 0; i < solutions.size(); i++) {
+                double correlation = CompiledGenome.compile(solutions.get(i), data).correlate(data, null);
+                System.out.println(args[d] + "\t" + (i + 1) + "\t" + correlation);
+                markResult();
+            }
+        }
+        return 0;
+    }
+
+    // Runs a command in a child JVM that writes or uses an AppCDS archive
+    static int archive(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            return 2;
+        }
+        File archive = new File(args[0]).getAbsoluteFile();
+        String[] command = Arrays.copyOfRange(args, 1, args.length);
+        if (!supportsDynamicArchive()) {
+            System.out.println("WARNING: AppCDS archives need JDK 13 or later, running " + command[0] + " without one");
+            return run(command);
+        }
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (new File(entry).isDirectory()) {
+                System.out.println("WARNING: AppCDS archives only hold classes from jar files, not from " + entry
+                        + ", running " + command[0] + " without one");
+                return run(command);
+            }
+        }
+        File cache = new File(archive.getPath() + ".datasets");
+        cache.mkdirs();
+
+        List<String> line = new ArrayList<String>();
+        line.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        boolean create = !archive.isFile();
+        line.add(create ? "-XX:ArchiveClassesAtExit=" + archive : "-XX:SharedArchiveFile=" + archive);
+        line.add("-Xshare:auto");
+        line.add("-D" + DATASET_CACHE + "=" + cache);
+        line.add("-cp");
+        line.add(System.getProperty("java.class.path"));
+        line.add(Cli.class.getName());
+        line.addAll(Arrays.asList(command));
+
+        System.out.println("INFO: " + (create ? "Writing" : "Using") + " class data archive " + archive);
+        long start = System.nanoTime();
+        int status = new ProcessBuilder(line).inheritIO().start().waitFor();
+        System.out.println("INFO: " + command[0] + " finished in " + (System.nanoTime() - start) / 1000000 + " ms including JVM start");
+        return status;
+    }
+
+    /* Helpers */
+
+    private static void usage() {
+        System.out.println("Usage: Cli <command> [args]");
+        System.out.println("  train <dataset> <genome file> [name=value ...]");
+        System.out.println("  transfer <genome file> <dataset> <genome file> [name=value ...]");
+        System.out.println("  score <genome file> <dataset>");
+        System.out.println("  validate <genome file> <dataset> [<dataset> ...]");
+        System.out.println("  archive <archive file> <command> [args ...]");
+    }
+
+    // Reads GA settings, taking out the run options: generations=N is added to the termination
+    // criteria, and the others are applied to the calculator scoring against Model, the algorithm
+    // and the datasets loaded from then on
+    private static GAConfig settings(String[] args, Termination termination) {
+        List<String> pairs = new ArrayList<String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.trim() : arg.substring(0, eq).trim();
+            String value = eq < 0 ? "" : arg.substring(eq + 1).trim();
+            switch (name) {
+                case "generations":
+                    termination.add(Termination.maxGenerations(Integer.parseInt(value)));
+                    break;
+                case "sharing":
+                    FitnessCalc.MODEL.setSharing(Boolean.parseBoolean(value));
+                    break;
+                case "batching":
+                    FitnessCalc.MODEL.setBatching(Boolean.parseBoolean(value));
+                    break;
+                case "subtreeCache":
+                    FitnessCalc.MODEL.setSubtreeCache(Long.parseLong(value));
+                    break;
+                case "fingerprinting":
+                    FitnessCalc.MODEL.setFingerprinting(Boolean.parseBoolean(value));
+                    break;
+                case "parallelism":
+                    int parallelism = Integer.parseInt(value);
+                    pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+                    FitnessCalc.MODEL.setParallelism(pool);
+                    break;
+                case "localSearchThreads":
+                    LocalSearch.setThreads(Integer.parseInt(value));
+                    break;
+                case "multiObjective":
+                    Algorithm.setMultiObjective(Boolean.parseBoolean(value));
+                    break;
+                case "quantized":
+                    quantized = Boolean.parseBoolean(value);
+                    break;
+                case "front":
+                    frontFile = value;
+                    break;
+                default:
+                    pairs.add(arg);
+                    break;
+            }
+        }
+        return GAConfig.parse(String.join(",", pairs));
+    }
+
+    // Stops the threads started for the run options
+    private static void release() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+            FitnessCalc.MODEL.setParallelism(null);
+        }
+        LocalSearch.setThreads(1);
+    }
+
+    // Prints the best solutions after training and writes them to a genome file, and the first
+    // Pareto front of the last population to the front file if one was asked for
+    private static int finish(String genomeFile, Population last) throws Exception {
+        Model.printBestTrainingSolution();
+        Model.printBestValidationSolution();
+        markResult();
+        System.out.println("INFO: " + FitnessCalc.MODEL.report());
+        HallOfFame hallOfFame = Model.getTrainingHallOfFame();
+        if (hallOfFame.size() == 0) {
+            System.out.println("WARNING: No solution was found");
+            return 1;
+        }
+        hallOfFame.export(genomeFile);
+        System.out.println("INFO: Best solutions written to " + genomeFile);
+        if (frontFile != null && last != null) {
+            ParetoEvolution.exportFront(last, frontFile);
+            System.out.println("INFO: Pareto front written to " + frontFile);
+        }
+        return 0;
+    }
+
+    // Loads a dataset as the run options ask for
+    static Dataset dataset(String filename) throws IOException {
+        Dataset data = read(filename);
+        if (!quantized) {
+            return data;
+        }
+        Dataset approximate = data.quantize();
+        System.out.println("INFO: Quantized " + filename + ", largest error " + approximate.getQuantizationError());
+        return approximate;
+    }
+
+    // Reads a dataset, mapping binary files and, in archive mode, binary copies of text files
+    private static Dataset read(String filename) throws IOException {
+        if (filename.endsWith(".bin")) {
+            return Dataset.map(filename);
+        }
+        String cache = System.getProperty(DATASET_CACHE);
+        if (cache == null) {
+            return Dataset.load(filename);
+        }
+        // The copy is named after the size and modification time too, so edited files are read again
+        File file = new File(filename);
+        File copy = new File(cache, file.getName() + "." + file.length() + "." + file.lastModified() + ".bin");
+        if (!copy.isFile()) {
+            Dataset.load(filename, Dataset.Storage.OFF_HEAP).save(copy.getPath());
+        }
+        return Dataset.map(copy.getPath());
+    }
+
+    private static boolean supportsDynamicArchive() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 13;
+    }
+
+    private static void markResult() {
+        if (firstResult == 0) {
+            firstResult = System.currentTimeMillis();
+        }
+    }
+
+    // Reports the time to first result only now, so that the management classes it needs
+    // are not loaded before the result
+    private static void reportFirstResult() {
+        if (firstResult == 0) return;
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("INFO: First result " + (firstResult - jvmStart) + " ms after JVM start");
+    }
+}
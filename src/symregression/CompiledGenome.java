@@ -0,0 +1,267 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import symregression.Model.Expression;
+
+/**
+ * A solution parsed, reduced and compiled to a StackProgram once, ready to be evaluated on many rows.
+ * Evaluation gives exactly the values of the per-row expression strings: BigRational
+ * arithmetic with the operators of Model.BinaryOperator, and DEFAULT for rows that fail.
+ * The one exception are genomes that IntervalAnalysis does not find safe: they are evaluated
+ * with a guard that fails rows on which a power would exceed IntervalAnalysis.MAX_POW_BITS.
+ */
+public class CompiledGenome {
+
+    // Rows of the chunks a dataset is split into when a solution is evaluated on several threads
+    static final int PARALLEL_CHUNK_ROWS = 1024;
+
+    private final int[] genes;
+    // The reduced expression
+    private final Expression expression;
+    // Risks found in the reduced expression
+    private final IntervalAnalysis analysis;
+    // The reduced expression as postfix instructions
+    private final StackProgram program;
+
+    private CompiledGenome(int[] genes, Expression expression, double lower, double upper) {
+        IntervalAnalysis analysis = IntervalAnalysis.analyze(expression, lower, upper);
+        if (analysis.alwaysFails()) {
+            // No row can be evaluated, so every row gets DEFAULT
+            expression = new Model.Number(BigRational.valueOf(Model.DEFAULT));
+        }
+        this.genes = genes.clone();
+        this.expression = expression;
+        this.analysis = analysis;
+        this.program = StackProgram.compile(expression);
+    }
+
+    // Compiles a solution for rows with any base measure scores
+    public static CompiledGenome compile(int[] sol) {
+        return new CompiledGenome(sol, Optimizer.optimize(Model.parseGenome(sol), null, null),
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    // Compiles a solution for the rows of a dataset, using the range of its scores to drop
+    // operands that cannot matter there. The result must only be evaluated on that dataset
+    public static CompiledGenome compile(int[] sol, Dataset data) {
+        if (data.size() == 0) {
+            return compile(sol);
+        }
+        return compile(sol, data.getLower(), data.getUpper());
+    }
+
+    // Compiles a solution for rows whose base measure scores all lie between lower and upper,
+    // e.g. the rows of several datasets. The result must only be evaluated on such rows
+    public static CompiledGenome compile(int[] sol, double lower, double upper) {
+        return new CompiledGenome(sol, Optimizer.optimize(Model.parseGenome(sol),
+                BigRational.valueOf(String.valueOf(lower)), BigRational.valueOf(String.valueOf(upper))),
+                lower, upper);
+    }
+
+    /* Public methods */
+
+    // Evaluates the solution on a row of base measure scores a, b, c and d
+    public double evaluate(double[] row) {
+        return evaluate(row, null);
+    }
+
+    // Evaluates the solution on a row, charging the operations to meter unless it is null
+    double evaluate(double[] row, EvaluationBudget.Meter meter) {
+        return evaluate(row, null, meter);
+    }
+
+    // Evaluates the solution on a row whose scores are already converted to BigRational values,
+    // as the variables of StackProgram.run, or null to convert them here
+    double evaluate(double[] row, BigRational[] variables, EvaluationBudget.Meter meter) {
+        double value;
+        try {
+            value = program.run(row, variables, !analysis.isSafe(), meter).doubleValue();
+        } catch (EvaluationBudget.Exceeded e) {
+            throw e;
+        } catch (Exception e) {
+            value = Model.DEFAULT;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            value = Model.DEFAULT;
+        return value;
+    }
+
+    // Evaluates the solution on every row of a dataset
+    public double[] evaluate(Dataset data) {
+        double[] target = new double[data.size()];
+        if (isConstant()) {
+            // Same value on every row, computed only once
+            Arrays.fill(target, evaluate((double[]) null));
+            return target;
+        }
+        double[] buffer = new double[Dataset.FEATURES];
+        for (int a = 0; a < target.length; a++) {
+            target[a] = evaluate(data.getRow(a, buffer));
+        }
+        return target;
+    }
+
+    // Evaluates the solution on every row of a dataset within a budget. Rows that fail still
+    // get DEFAULT, but going over the budget aborts the whole evaluation with Exceeded
+    public double[] evaluate(Dataset data, EvaluationBudget budget) {
+        if (budget == null || isConstant()) {
+            return evaluate(data);
+        }
+        EvaluationBudget.Meter meter = budget.start(data.size());
+        double[] target = new double[data.size()];
+        double[] buffer = new double[Dataset.FEATURES];
+        for (int a = 0; a < target.length; a++) {
+            target[a] = evaluate(data.getRow(a, buffer), meter);
+        }
+        return target;
+    }
+
+    // Pearson correlation between the human judgements of a dataset and the values of the solution,
+    // within a budget unless it is null. Rows are read and evaluated one at a time without keeping
+    // their values, so off-heap datasets are evaluated without heap allocations that grow with their size
+    public double correlate(Dataset data, EvaluationBudget budget) {
+        Model.PearsonAccumulator pearson = new Model.PearsonAccumulator();
+        if (isConstant()) {
+            double value = evaluate((double[]) null);
+            for (int a = 0; a < data.size(); a++) {
+                pearson.add(data.getJudgement(a), value);
+            }
+            return pearson.result();
+        }
+        EvaluationBudget.Meter meter = budget == null ? null : budget.start(data.size());
+        double[] buffer = new double[Dataset.FEATURES];
+        for (int a = 0; a < data.size(); a++) {
+            pearson.add(data.getJudgement(a), evaluate(data.getRow(a, buffer), meter));
+        }
+        return pearson.result();
+    }
+
+    /**
+     * Bound the change in correlation caused by evaluating a solution on an approximation of a
+     * dataset, e.g. its quantized copy, instead of the dataset itself. Correlation is the cosine
+     * of the angle between the centered judgements and the centered values, so it moves by at
+     * most the angle by which the centered values move, whatever the judgements.
+     * @param sol The genes of the solution.
+     * @param full The dataset.
+     * @param approximate The approximation, with the same rows in the same order.
+     * @return A bound on the difference between the correlations on both, at most 2.
+     */
+    public static double correlationErrorBound(int[] sol, Dataset full, Dataset approximate) {
+        if (full.size() != approximate.size()) {
+            throw new IllegalArgumentException(approximate + " does not have the rows of " + full);
+        }
+        CompiledGenome exact = compile(sol, full);
+        CompiledGenome approximated = compile(sol, approximate);
+        double[] buffer = new double[Dataset.FEATURES];
+        double sum = 0, sumSquares = 0, errorSum = 0, errorSquares = 0;
+        for (int a = 0; a < full.size(); a++) {
+            double value = exact.evaluate(full.getRow(a, buffer));
+            double error = approximated.evaluate(approximate.getRow(a, buffer)) - value;
+            sum += value;
+            sumSquares += value * value;
+            errorSum += error;
+            errorSquares += error * error;
+        }
+        int n = full.size();
+        double spread = Math.sqrt(Math.max(0, sumSquares - sum * sum / n));
+        double errorSpread = Math.sqrt(Math.max(0, errorSquares - errorSum * errorSum / n));
+        if (errorSpread == 0) {
+            return 0;
+        }
+        // The angle between a vector and the vector moved by at most a fraction of its length
+        return errorSpread < spread ? Math.min(2, Math.asin(errorSpread / spread)) : 2;
+    }
+
+    // Pearson correlation as correlate(data, budget) computes it, with the rows split into chunks that
+    // are evaluated on the given pool, or on the calling thread if it is null. Each chunk accumulates
+    // its own correlation terms, which are merged pairwise up the tree of chunks. The result may differ
+    // from the one of a single thread in the last bits; the budget applies to all chunks together
+    public double correlate(Dataset data, EvaluationBudget budget, ForkJoinPool pool) {
+        if (pool == null || isConstant() || data.size() <= PARALLEL_CHUNK_ROWS) {
+            return correlate(data, budget);
+        }
+        EvaluationBudget.Meter meter = budget == null ? null : budget.startShared(data.size());
+        return pool.invoke(new Chunk(data, 0, data.size(), meter)).result();
+    }
+
+    // Whether the reduced expression no longer depends on the row
+    public boolean isConstant() {
+        return expression instanceof Model.Number;
+    }
+
+    // Number of instructions of the compiled program
+    public int size() {
+        return program.size();
+    }
+
+    public int[] getGenes() {
+        return genes.clone();
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public IntervalAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    /**
+     * Correlation terms of the rows from..to of a dataset, split in halves down to PARALLEL_CHUNK_ROWS rows.
+     */
+    private class Chunk extends RecursiveTask<Model.PearsonAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final Dataset data;
+        private final int from;
+        private final int to;
+        // Meter of the whole evaluation that each chunk takes a share of, or null
+        private final EvaluationBudget.Meter meter;
+
+        Chunk(Dataset data, int from, int to, EvaluationBudget.Meter meter) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.meter = meter;
+        }
+
+        @Override
+        protected Model.PearsonAccumulator compute() {
+            if (to - from <= PARALLEL_CHUNK_ROWS) {
+                Model.PearsonAccumulator pearson = new Model.PearsonAccumulator();
+                EvaluationBudget.Meter share = meter == null ? null : meter.share();
+                double[] buffer = new double[Dataset.FEATURES];
+                for (int a = from; a < to; a++) {
+                    pearson.add(data.getJudgement(a), evaluate(data.getRow(a, buffer), share));
+                }
+                if (share != null) {
+                    share.finish();
+                }
+                return pearson;
+            }
+            int middle = (from + to) >>> 1;
+            Chunk first = new Chunk(data, from, middle, meter);
+            first.fork();
+            Model.PearsonAccumulator second = new Chunk(data, middle, to, meter).compute();
+            Model.PearsonAccumulator pearson = first.join();
+            pearson.merge(second);
+            return pearson;
+        }
+    }
+}
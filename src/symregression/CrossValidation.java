@@ -0,0 +1,272 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Repeated k-fold cross-validation of the GA on one dataset.
+ *
+ * The rows are shuffled and dealt into k folds, once per repetition. Every fold is held out in
+ * turn: a population evolves on the views of the other folds and its fittest solution is scored
+ * on the held-out fold. Folds are views of the loaded dataset, so no rows are copied, and they
+ * run concurrently. Solutions are compiled once and shared by all folds.
+ *
+ * The training and validation correlations of all folds are summarized by their mean and a 95%
+ * confidence interval. The folds of one repetition share rows, so the interval is a rough guide
+ * rather than an exact one; it still shows how much a small dataset such as mc.txt makes the
+ * estimate move.
+ */
+public class CrossValidation {
+
+    // Two-sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom
+    private static final double[] T_975 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    /**
+     * Outcome of one held-out fold.
+     */
+    public static class Fold {
+        public final int repetition;
+        public final int fold;
+        public final double training;
+        public final double validation;
+        public final int[] best;
+
+        Fold(int repetition, int fold, double training, double validation, int[] best) {
+            this.repetition = repetition;
+            this.fold = fold;
+            this.training = training;
+            this.validation = validation;
+            this.best = best;
+        }
+
+        @Override
+        public String toString() {
+            return repetition + "\t" + fold + "\t" + training + "\t" + validation + "\t" + FitnessCalc.toString(best);
+        }
+    }
+
+    /**
+     * Mean of a sample with a 95% confidence interval.
+     */
+    public static class Estimate {
+        public final double mean;
+        public final double standardDeviation;
+        public final double low;
+        public final double high;
+
+        Estimate(double[] values) {
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            mean = sum / values.length;
+            double squares = 0;
+            for (double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            standardDeviation = values.length > 1 ? Math.sqrt(squares / (values.length - 1)) : 0;
+            double margin = values.length > 1 ? t975(values.length - 1) * standardDeviation / Math.sqrt(values.length) : 0;
+            low = mean - margin;
+            high = mean + margin;
+        }
+
+        @Override
+        public String toString() {
+            return mean + " (sd " + standardDeviation + ", 95% CI " + low + " .. " + high + ")";
+        }
+    }
+
+    private final Dataset data;
+    private final int folds;
+    private final int repetitions;
+    private final int generations;
+    private final int threads;
+    private final long seed;
+
+    // Compiled solutions shared by the folds
+    private final ConcurrentHashMap<String, CompiledGenome> compiled = new ConcurrentHashMap<String, CompiledGenome>();
+    private final List<Fold> results = new ArrayList<Fold>();
+
+    public CrossValidation(Dataset data, int folds, int repetitions, int generations, int threads, long seed) {
+        if (folds < 2 || folds > data.size())
+            throw new IllegalArgumentException("Number of folds must be between 2 and " + data.size() + ": " + folds);
+        this.data = data;
+        this.folds = folds;
+        this.repetitions = repetitions;
+        this.generations = generations;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: CrossValidation <dataset> [folds] [repetitions] [generations] [threads] [seed]");
+            return;
+        }
+        Dataset data = Dataset.load(args[0]);
+        int folds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int generations = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        CrossValidation cv = new CrossValidation(data, folds, repetitions, generations, threads, seed);
+        cv.run();
+        System.out.println("repetition\tfold\ttraining\tvalidation\tgenes");
+        for (Fold fold : cv.getResults()) {
+            System.out.println(fold);
+        }
+        System.out.println("Training: " + cv.getTraining());
+        System.out.println("Validation: " + cv.getValidation());
+    }
+
+    /* Public methods */
+
+    /**
+     * Run every fold of every repetition.
+     * @return The outcomes, ordered by repetition and fold.
+     */
+    public List<Fold> run() throws Exception {
+        final GAConfig settings = Algorithm.config();
+        Random shuffler = new Random(seed);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Fold>> futures = new ArrayList<Future<Fold>>();
+            for (int r = 0; r < repetitions; r++) {
+                int[][] split = split(data.size(), folds, shuffler);
+                for (int f = 0; f < folds; f++) {
+                    final int repetition = r;
+                    final int fold = f;
+                    final Dataset validation = data.view(data.getName() + " fold " + f, split[f]);
+                    final Dataset training = data.view(data.getName() + " without fold " + f, complement(split, f));
+                    final long foldSeed = seed + (long) r * folds + f;
+                    futures.add(executor.submit(new Callable<Fold>() {
+                        @Override
+                        public Fold call() throws Exception {
+                            Algorithm.setConfig(settings);
+                            Algorithm.setSeed(foldSeed);
+                            return runFold(repetition, fold, training, validation);
+                        }
+                    }));
+                }
+            }
+            results.clear();
+            for (Future<Fold> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    public List<Fold> getResults() {
+        return results;
+    }
+
+    // Training correlations of the folds
+    public Estimate getTraining() {
+        double[] values = new double[results.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = results.get(i).training;
+        }
+        return new Estimate(values);
+    }
+
+    // Correlations on the held-out folds
+    public Estimate getValidation() {
+        double[] values = new double[results.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = results.get(i).validation;
+        }
+        return new Estimate(values);
+    }
+
+    /**
+     * Deal the shuffled rows of a dataset into folds.
+     * @param size The number of rows.
+     * @param folds The number of folds.
+     * @param random The generator used to shuffle the rows.
+     * @return The rows of each fold, whose sizes differ by at most one.
+     */
+    static int[][] split(int size, int folds, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[][] split = new int[folds][];
+        for (int f = 0; f < folds; f++) {
+            split[f] = new int[(size - f + folds - 1) / folds];
+            for (int i = 0; i < split[f].length; i++) {
+                split[f][i] = order[i * folds + f];
+            }
+        }
+        return split;
+    }
+
+    /* Helpers */
+
+    // Evolves a population on the training view and scores its fittest solution on both views
+    private Fold runFold(int repetition, int fold, Dataset training, Dataset validation) throws Exception {
+        FitnessCalc calc = new FitnessCalc(training);
+        calc.setCompiledGenomes(compiled);
+        Population pop = new Population(Algorithm.config().populationSize, true, calc);
+        for (int generation = 0; generation < generations; generation++) {
+            pop = Algorithm.evolvePopulation(pop);
+        }
+        Individual fittest = pop.getFittest();
+        int[] best = fittest.vectorizeNumeric();
+        String key = fittest.getCanonicalForm() != null ? fittest.getCanonicalForm() : FitnessCalc.toString(best);
+        CompiledGenome genome = calc.compile(best, key);
+        double trainingScore = Model.getPearson(training.getSource(), genome.evaluate(training));
+        double validationScore = Model.getPearson(validation.getSource(), genome.evaluate(validation));
+        return new Fold(repetition, fold, trainingScore, validationScore, best);
+    }
+
+    // Rows of all folds but one, in increasing order
+    private static int[] complement(int[][] split, int excluded) {
+        int size = 0;
+        for (int f = 0; f < split.length; f++) {
+            if (f != excluded) size += split[f].length;
+        }
+        int[] rows = new int[size];
+        int next = 0;
+        for (int f = 0; f < split.length; f++) {
+            if (f == excluded) continue;
+            for (int row : split[f]) {
+                rows[next++] = row;
+            }
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private static double t975(int degreesOfFreedom) {
+        return degreesOfFreedom <= T_975.length ? T_975[degreesOfFreedom - 1] : 1.96;
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Immutable dataset of word pairs loaded from one of the data files.
+ * Column 0 holds the human judgement (the source scores of Model) and columns 1..4
+ * the base measure scores bound to the variables a, b, c and d.
+ * Instances are never modified after loading, so several runs can share them.
+ *
+ * A view selects some rows of another dataset by index, without copying them, e.g. the folds
+ * of a cross-validation. Views keep the score range of the dataset they were taken from, so a
+ * genome compiled for one view is valid on every other view of the same dataset.
+ *
+ * Rows are kept either in Java arrays or off the heap, in one direct buffer per column. Off-heap
+ * datasets are either parsed from a text file into newly allocated buffers or mapped from a
+ * binary file written by save, so the heap does not grow with the number of rows and the
+ * garbage collector never scans them. Each column is limited to Integer.MAX_VALUE / 8 rows.
+ * Allocated buffers count against -XX:MaxDirectMemorySize, which defaults to the heap size;
+ * mapped files do not.
+ *
+ * Quantized datasets keep each base measure score as a 16-bit step on a decimal grid, a quarter
+ * of the memory of a double, and decode it when the row is read. Each column gets the finest grid
+ * of 10^-k, k at most MAX_DECIMALS, whose 65536 steps cover its range: 4 decimals for scores in
+ * [0, 1]. Scores with no more decimals than that are kept exactly. The others move by at most
+ * getQuantizationError, and CompiledGenome.correlationErrorBound bounds what that does to the
+ * correlation of a solution. Decoded scores are short decimals, which also keeps their BigRational
+ * values small. The judgements are kept as doubles.
+ */
+public class Dataset {
+
+    // Number of base measure scores used as variables
+    static final int FEATURES = 4;
+    // First bytes of a binary dataset file
+    private static final int MAGIC = 0x53524453;
+    private static final int VERSION = 1;
+    // Size of the header of a binary dataset file: magic, version, features and rows
+    private static final int HEADER_BYTES = 16;
+    // Number of steps of a quantized column, and the finest grid tried for them
+    private static final int QUANTIZED_STEPS = 1 << 16;
+    private static final int MAX_DECIMALS = 9;
+
+    // Where the rows of a dataset are kept
+    public enum Storage {
+        HEAP,       // Java arrays
+        OFF_HEAP,   // direct buffers outside the Java heap, one per column
+        QUANTIZED   // 16-bit steps of a decimal grid in Java arrays, one per column
+    }
+
+    private final String name;
+    private final int size;
+    // Human judgements, one per row. Null for datasets kept off the heap, which are not views
+    private final double[] source;
+    // Base measure scores, one array of FEATURES values per row, or null off the heap
+    private final double[][] rows;
+    // Off the heap: the judgements in column 0 and the base measure scores in columns 1..FEATURES.
+    // Only read with absolute gets, which several threads can do at once. Null on the heap
+    private final DoubleBuffer[] columns;
+    // Quantized base measure scores, one array per column, or null. Score c of row a is
+    // (offsets[c] + quantized[c][a]) / scales[c]
+    private final char[][] quantized;
+    private final double[] offsets;
+    private final double[] scales;
+    // Largest difference between a quantized score and the score it was made from
+    private final double quantizationError;
+    // Rows of this dataset within rows, columns or quantized, or null for all of them in order
+    private final int[] index;
+    // Smallest and largest base measure score of any row
+    private final double lower;
+    private final double upper;
+
+    private Dataset(String name, double[] source, double[][] rows) {
+        this.name = name;
+        this.size = source.length;
+        this.source = source;
+        this.rows = rows;
+        this.columns = null;
+        this.quantized = null;
+        this.offsets = null;
+        this.scales = null;
+        this.quantizationError = 0;
+        this.index = null;
+
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (double[] row : rows) {
+            for (double value : row) {
+                lower = Math.min(lower, value);
+                upper = Math.max(upper, value);
+            }
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    private Dataset(String name, DoubleBuffer[] columns) {
+        this.name = name;
+        this.size = columns[0].limit();
+        this.source = null;
+        this.rows = null;
+        this.columns = columns;
+        this.quantized = null;
+        this.offsets = null;
+        this.scales = null;
+        this.quantizationError = 0;
+        this.index = null;
+
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int c = 1; c <= FEATURES; c++) {
+            for (int a = 0; a < size; a++) {
+                double value = columns[c].get(a);
+                lower = Math.min(lower, value);
+                upper = Math.max(upper, value);
+            }
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    private Dataset(String name, Dataset parent, int[] index) {
+        this.name = name;
+        this.size = index.length;
+        this.rows = parent.rows;
+        this.columns = parent.columns;
+        this.quantized = parent.quantized;
+        this.offsets = parent.offsets;
+        this.scales = parent.scales;
+        this.quantizationError = parent.quantizationError;
+        this.index = new int[index.length];
+        // Only the judgements are gathered, as the Pearson correlation needs them in one array
+        this.source = new double[index.length];
+        for (int i = 0; i < index.length; i++) {
+            this.index[i] = parent.index == null ? index[i] : parent.index[index[i]];
+            this.source[i] = parent.getJudgement(index[i]);
+        }
+        this.lower = parent.lower;
+        this.upper = parent.upper;
+    }
+
+    private Dataset(String name, double[] source, char[][] quantized, double[] offsets, double[] scales, double error) {
+        this.name = name;
+        this.size = source.length;
+        this.source = source;
+        this.rows = null;
+        this.columns = null;
+        this.quantized = quantized;
+        this.offsets = offsets;
+        this.scales = scales;
+        this.quantizationError = error;
+        this.index = null;
+
+        // The bounds of the decoded scores, which the Optimizer relies on
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        double[] row = new double[FEATURES];
+        for (int a = 0; a < size; a++) {
+            for (double value : getRow(a, row)) {
+                lower = Math.min(lower, value);
+                upper = Math.max(upper, value);
+            }
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    // Creates a dataset from arrays that the caller hands over and no longer modifies
+    static Dataset of(String name, double[] source, double[][] rows) {
+        return new Dataset(name, source, rows);
+    }
+
+    // Converts a text data file into a binary file that map can read
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: Dataset <data file> <binary file>");
+            return;
+        }
+        Dataset data = load(args[0], Storage.OFF_HEAP);
+        data.save(args[1]);
+        System.out.println("INFO: Saved " + data + " to " + args[1]);
+    }
+
+    /**
+     * Load a dataset from a file into Java arrays, using the same format rules as Model.load_training.
+     * @param filename The path to the data file.
+     * @return The loaded dataset.
+     */
+    public static Dataset load(final String filename) throws IOException {
+        return load(filename, Storage.HEAP);
+    }
+
+    /**
+     * Load a dataset from a file, using the same format rules as Model.load_training.
+     * @param filename The path to the data file.
+     * @param storage Where the rows are kept.
+     * @return The loaded dataset.
+     */
+    public static Dataset load(final String filename, Storage storage) throws IOException {
+        if (storage == Storage.QUANTIZED) {
+            return load(filename, Storage.HEAP).quantize();
+        }
+        ArrayList<double[]> lines = new ArrayList<double[]>();
+        // Off the heap, rows go straight into the columns, which double in size when full
+        DoubleBuffer[] columns = storage == Storage.OFF_HEAP ? allocate(1024) : null;
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename)));
+        try {
+            String dat;
+            while ((dat = reader.readLine()) != null) {
+                if (dat.trim().length() == 0) continue;
+                String[] line = dat.split(",");
+                if (line.length == 8 || line.length == 9) {
+                    try {
+                        double[] g = new double[FEATURES + 1];
+                        for (int i = 0; i <= FEATURES; i++) {
+                            g[i] = Double.parseDouble(line[i]);
+                        }
+                        if (columns == null) {
+                            lines.add(g);
+                        } else {
+                            if (count == columns[0].capacity()) columns = grow(columns);
+                            for (int c = 0; c <= FEATURES; c++) {
+                                columns[c].put(count, g[c]);
+                            }
+                            count++;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid number format in data: " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (columns != null) {
+            for (DoubleBuffer column : columns) {
+                column.limit(count);
+            }
+            return new Dataset(filename, columns);
+        }
+        int dim = lines.size();
+        double[] source = new double[dim];
+        double[][] rows = new double[dim][FEATURES];
+        for (int a = 0; a < dim; a++) {
+            source[a] = lines.get(a)[0];
+            System.arraycopy(lines.get(a), 1, rows[a], 0, FEATURES);
+        }
+        return of(filename, source, rows);
+    }
+
+    /**
+     * Map a binary dataset file written by save. The rows stay in the file and are paged in
+     * by the operating system when read.
+     * @param filename The path to the binary file.
+     * @return The dataset, kept off the heap.
+     */
+    public static Dataset map(final String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != FEATURES) {
+                throw new IOException("Not a binary dataset file: " + filename);
+            }
+            int count = header.getInt();
+            if (channel.size() != HEADER_BYTES + (long) count * 8 * (FEATURES + 1)) {
+                throw new IOException("Truncated binary dataset file: " + filename);
+            }
+            DoubleBuffer[] columns = new DoubleBuffer[FEATURES + 1];
+            for (int c = 0; c <= FEATURES; c++) {
+                // The mapping stays valid after the channel is closed
+                columns[c] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + (long) c * count * 8, (long) count * 8)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            return new Dataset(filename, columns);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write the rows of this dataset to a binary file that map can read: a header of four
+     * little-endian ints (magic, version, FEATURES and the number of rows), followed by the
+     * judgements and then each base measure score, one column after the other, as little-endian doubles.
+     * @param filename The path to the binary file.
+     */
+    public void save(final String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(FEATURES).putInt(size);
+            double[] row = new double[FEATURES];
+            for (int c = 0; c <= FEATURES; c++) {
+                for (int a = 0; a < size; a++) {
+                    if (buffer.remaining() < 8) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                        buffer.clear();
+                    }
+                    buffer.putDouble(c == 0 ? getJudgement(a) : getRow(a, row)[c - 1]);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Copy the rows of this dataset into a quantized dataset, with the base measure scores of each
+     * column rounded to the finest decimal grid of at most QUANTIZED_STEPS steps that covers them.
+     * @return The quantized dataset, with the same name and judgements.
+     */
+    public Dataset quantize() {
+        double[][] values = new double[FEATURES][size];
+        double[] row = new double[FEATURES];
+        for (int a = 0; a < size; a++) {
+            double[] scores = getRow(a, row);
+            for (int c = 0; c < FEATURES; c++) {
+                values[c][a] = scores[c];
+            }
+        }
+        char[][] steps = new char[FEATURES][size];
+        double[] offsets = new double[FEATURES];
+        double[] scales = new double[FEATURES];
+        double error = 0;
+        for (int c = 0; c < FEATURES; c++) {
+            double lowest = Double.POSITIVE_INFINITY;
+            double highest = Double.NEGATIVE_INFINITY;
+            for (double value : values[c]) {
+                lowest = Math.min(lowest, value);
+                highest = Math.max(highest, value);
+            }
+            if (size > 0 && (Double.isInfinite(lowest) || Double.isInfinite(highest) || Double.isNaN(lowest + highest))) {
+                throw new IllegalArgumentException("Cannot quantize scores that are not finite in " + this);
+            }
+            // The finest grid whose steps reach from the lowest to the highest score
+            int decimals = MAX_DECIMALS;
+            while (decimals > 0 && Math.round(highest * Math.pow(10, decimals)) - Math.round(lowest * Math.pow(10, decimals))
+                    >= QUANTIZED_STEPS) {
+                decimals--;
+            }
+            scales[c] = Math.pow(10, decimals);
+            offsets[c] = size == 0 ? 0 : Math.round(lowest * scales[c]);
+            if (size > 0 && Math.round(highest * scales[c]) - offsets[c] >= QUANTIZED_STEPS) {
+                throw new IllegalArgumentException("Scores of " + this + " span too wide a range to quantize");
+            }
+            for (int a = 0; a < size; a++) {
+                steps[c][a] = (char) (Math.round(values[c][a] * scales[c]) - offsets[c]);
+                error = Math.max(error, Math.abs(values[c][a] - (offsets[c] + steps[c][a]) / scales[c]));
+            }
+        }
+        double[] judgements = new double[size];
+        for (int a = 0; a < size; a++) {
+            judgements[a] = getJudgement(a);
+        }
+        return new Dataset(name, judgements, steps, offsets, scales, error);
+    }
+
+    /**
+     * Select some rows of this dataset, without copying them.
+     * @param name The name of the view.
+     * @param indices The rows of this dataset that form the view, in order.
+     * @return The view.
+     */
+    public Dataset view(String name, int[] indices) {
+        for (int i : indices) {
+            if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("Row " + i + " of " + this);
+        }
+        return new Dataset(name, this, indices);
+    }
+
+    /* Getters */
+
+    public String getName() {
+        return name;
+    }
+
+    // Number of rows in the dataset
+    public int size() {
+        return size;
+    }
+
+    // Whether the rows are kept off the heap
+    public boolean isOffHeap() {
+        return columns != null;
+    }
+
+    // Whether the base measure scores are quantized
+    public boolean isQuantized() {
+        return quantized != null;
+    }
+
+    // Largest difference between a quantized base measure score and the score it was made from,
+    // 0 if the scores are not quantized or fit the grid exactly
+    public double getQuantizationError() {
+        return quantizationError;
+    }
+
+    // Human judgements of all rows. Shared with other users of the dataset, must not be modified.
+    // Off the heap they are copied into a new array, so prefer getJudgement for large datasets
+    double[] getSource() {
+        if (source != null) {
+            return source;
+        }
+        double[] copy = new double[size];
+        columns[0].duplicate().get(copy);
+        return copy;
+    }
+
+    // Human judgement of a row
+    double getJudgement(int index) {
+        return source != null ? source[index] : columns[0].get(index);
+    }
+
+    // Base measure scores of a row. Shared with other users of the dataset, must not be modified.
+    // Off the heap they are copied into a new array
+    double[] getRow(int index) {
+        return getRow(index, new double[FEATURES]);
+    }
+
+    // Base measure scores of a row. On the heap the shared row is returned, which must not be
+    // modified; off the heap or quantized the scores are copied into buffer, which is returned
+    double[] getRow(int index, double[] buffer) {
+        int row = this.index == null ? index : this.index[index];
+        if (rows != null) {
+            return rows[row];
+        }
+        if (quantized != null) {
+            for (int c = 0; c < FEATURES; c++) {
+                buffer[c] = (offsets[c] + quantized[c][row]) / scales[c];
+            }
+            return buffer;
+        }
+        for (int c = 0; c < FEATURES; c++) {
+            buffer[c] = columns[c + 1].get(row);
+        }
+        return buffer;
+    }
+
+    // Smallest base measure score of the dataset, or of the dataset a view was taken from
+    public double getLower() {
+        return lower;
+    }
+
+    // Largest base measure score of the dataset, or of the dataset a view was taken from
+    public double getUpper() {
+        return upper;
+    }
+
+    @Override
+    public String toString() {
+        if (quantized != null) {
+            return name + " (" + size() + " rows, quantized with error " + quantizationError + ")";
+        }
+        return name + " (" + size() + " rows)";
+    }
+
+    /* Helpers */
+
+    // Allocates FEATURES + 1 direct columns of the given number of rows
+    private static DoubleBuffer[] allocate(int capacity) {
+        DoubleBuffer[] columns = new DoubleBuffer[FEATURES + 1];
+        for (int c = 0; c <= FEATURES; c++) {
+            columns[c] = ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+        return columns;
+    }
+
+    // Copies full columns into columns twice as large
+    private static DoubleBuffer[] grow(DoubleBuffer[] columns) {
+        int capacity = columns[0].capacity();
+        if (capacity > Integer.MAX_VALUE / 16) throw new IllegalStateException("Too many rows for off-heap columns");
+        DoubleBuffer[] larger = allocate(capacity * 2);
+        for (int c = 0; c <= FEATURES; c++) {
+            DoubleBuffer old = columns[c].duplicate();
+            old.clear();
+            larger[c].put(old);
+            larger[c].clear();
+        }
+        return larger;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the work spent evaluating one genome on a dataset.
+ *
+ * - maxOperationsPerRow: number of operators applied per row, on average over the rows of the
+ *   evaluation, so that the same genome gets the same verdict on a dataset of any size
+ * - maxBits: size, in bits, of the numerator or denominator an operator may produce. It is
+ *   estimated from the operands before the operator is applied, so a runaway power or product
+ *   is stopped before it is computed
+ * - deadlineMillis: wall-clock time for the whole evaluation, or 0 for no deadline
+ *
+ * A genome that exceeds its budget is not given a value; the evaluation throws Exceeded and
+ * FitnessCalc gives the genome a penalty fitness instead.
+ */
+public class EvaluationBudget {
+
+    // Generous enough for any genome of ordinary size, whatever the number of rows
+    public static final EvaluationBudget DEFAULT = new EvaluationBudget(10000, 1 << 18, 0);
+
+    // Number of operations between two looks at the clock
+    private static final int CLOCK_INTERVAL = 256;
+
+    private final long maxOperationsPerRow;
+    private final long maxBits;
+    private final long deadlineMillis;
+
+    public EvaluationBudget(long maxOperationsPerRow, long maxBits, long deadlineMillis) {
+        this.maxOperationsPerRow = maxOperationsPerRow;
+        this.maxBits = maxBits;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    // Starts measuring one evaluation of the given number of rows against this budget
+    Meter start(long rows) {
+        return new Meter(null, rows);
+    }
+
+    // Starts measuring one evaluation of the given number of rows split over several threads,
+    // each of which measures its part with its own share of the returned meter
+    Meter startShared(long rows) {
+        return new Meter(new AtomicLong(), rows);
+    }
+
+    @Override
+    public String toString() {
+        return maxOperationsPerRow + " operations per row, " + maxBits + " bits"
+                + (deadlineMillis > 0 ? ", " + deadlineMillis + " ms" : "");
+    }
+
+    // Operations allowed over the given number of rows, saturating instead of overflowing
+    private long allowed(long rows) {
+        return maxOperationsPerRow > Long.MAX_VALUE / rows ? Long.MAX_VALUE : maxOperationsPerRow * rows;
+    }
+
+    /**
+     * Work done so far by one evaluation. Not shared between threads; the threads of an
+     * evaluation split over several each take a share instead.
+     */
+    class Meter {
+        private long operations = 0;
+        // Operations of all the shares of an evaluation split over several threads, or null
+        private final AtomicLong shared;
+        // Operations of this share already added to the shared total
+        private long added = 0;
+        // Operations allowed over all rows of the evaluation
+        private final long maxOperations;
+        private final long deadline;
+
+        private Meter(AtomicLong shared, long rows) {
+            this(shared, allowed(Math.max(rows, 1)), deadlineMillis > 0 ? System.nanoTime() + deadlineMillis * 1000000 : 0);
+        }
+
+        private Meter(AtomicLong shared, long maxOperations, long deadline) {
+            this.shared = shared;
+            this.maxOperations = maxOperations;
+            this.deadline = deadline;
+        }
+
+        // A meter for another thread of the same evaluation, counting against the same
+        // operations and deadline. Only for meters from startShared
+        Meter share() {
+            if (shared == null) throw new IllegalStateException("Meter not started with startShared");
+            return new Meter(shared, maxOperations, deadline);
+        }
+
+        // Accounts for applying an operator to the given operands, throwing Exceeded if that
+        // would go over the budget. A share only adds its operations to the shared total, and
+        // checks the total, every CLOCK_INTERVAL operations, so that the threads of an evaluation
+        // do not contend for the total on every operator
+        void charge(Model.BinaryOperator operator, BigRational left, BigRational right) {
+            long operations = ++this.operations;
+            if (shared == null ? operations > maxOperations : operations % CLOCK_INTERVAL == 0 && add() > maxOperations) {
+                throw new Exceeded("more than " + maxOperations + " operations");
+            }
+            if (deadline != 0 && operations % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                throw new Exceeded("more than " + deadlineMillis + " ms");
+            }
+            long bits;
+            switch (operator) {
+                case ADD:
+                case SUB:
+                    bits = (long) left.bitLength() + right.bitLength() + 1;
+                    break;
+                case MUL:
+                case DIV:
+                    bits = (long) left.bitLength() + right.bitLength();
+                    break;
+                case POW:
+                    bits = left.bitLength() <= 1 ? 1 : left.bitLength() * Math.abs((long) right.intValue());
+                    break;
+                default:
+                    bits = Math.max(left.bitLength(), right.bitLength());
+                    break;
+            }
+            if (bits > maxBits) {
+                throw new Exceeded("a " + operator + " result of about " + bits + " bits");
+            }
+        }
+
+        // Adds the operations of a share not added yet to the shared total and checks the total,
+        // throwing Exceeded if it is over the budget. Called by each share when it is done
+        void finish() {
+            if (shared != null && operations > added && add() > maxOperations) {
+                throw new Exceeded("more than " + maxOperations + " operations");
+            }
+        }
+
+        // Adds the operations of this share not added yet to the shared total, returning the total
+        private long add() {
+            long total = shared.addAndGet(operations - added);
+            added = operations;
+            return total;
+        }
+    }
+
+    /**
+     * Thrown when an evaluation goes over its budget.
+     */
+    public static class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Exceeded(String message) {
+            super(message);
+        }
+    }
+}
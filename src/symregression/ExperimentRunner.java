@@ -0,0 +1,322 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the GA.main scenarios over a grid of (source, target, seed, GA parameters) cells.
+ *
+ * For every cell a solution is evolved on the source dataset and validated on the target
+ * dataset, then transplanted into a fresh population that is evolved on the target.
+ * Cells run concurrently and share the loaded datasets, which are never modified.
+ * Each finished cell is appended as one tab separated line to the results file;
+ * cells already present there are skipped, so an interrupted grid can simply be restarted.
+ * Genomes that go over the evaluation budget are recorded next to it, in the results file
+ * name followed by ".quarantine", and are not evaluated again on the same dataset by any cell
+ * or later run.
+ *
+ * The grid file lists the values of each dimension, for example:
+ *   source = data/rg.txt, data/mc.txt
+ *   target = data/mc.txt, data/ws353.txt
+ *   seed = 1, 2, 3
+ *   population = 25
+ *   generations = 300
+ *   uniformRate = 0.5, 0.7
+ *   mutationRate = 0.1, 0.2
+ *   tournamentSize = 5
+ *   elitism = true, false
+ * Dimensions that are not listed take the value of GAConfig.DEFAULT, or 300 generations.
+ */
+public class ExperimentRunner {
+
+    // Columns of the results file. The first KEY_COLUMNS identify the cell
+    static final String HEADER = "source\ttarget\tseed\tpopulation\tgenerations"
+            + "\tuniformRate\tmutationRate\ttournamentSize\telitism"
+            + "\tsourceTraining\tcrossValidation\ttransferTraining\tmillis\tsolution";
+    static final int KEY_COLUMNS = 9;
+
+    /**
+     * One cell of the grid.
+     */
+    public static class Cell {
+        final String source;
+        final String target;
+        final long seed;
+        final int populationSize;
+        final int generations;
+        final double uniformRate;
+        final double mutationRate;
+        final int tournamentSize;
+        final boolean elitism;
+
+        public Cell(String source, String target, long seed, int populationSize, int generations) {
+            this(source, target, seed, populationSize, generations, GAConfig.DEFAULT.uniformRate,
+                    GAConfig.DEFAULT.mutationRate, GAConfig.DEFAULT.tournamentSize, GAConfig.DEFAULT.elitism);
+        }
+
+        public Cell(String source, String target, long seed, int populationSize, int generations,
+                double uniformRate, double mutationRate, int tournamentSize, boolean elitism) {
+            this.source = source;
+            this.target = target;
+            this.seed = seed;
+            this.populationSize = populationSize;
+            this.generations = generations;
+            this.uniformRate = uniformRate;
+            this.mutationRate = mutationRate;
+            this.tournamentSize = tournamentSize;
+            this.elitism = elitism;
+        }
+
+        // The GA settings of the cell, with the default ones for what the grid does not vary
+        GAConfig config() {
+            return new GAConfig(populationSize, uniformRate, mutationRate, tournamentSize, elitism,
+                    GAConfig.DEFAULT.filterDuplicates, GAConfig.DEFAULT.localSearchSteps);
+        }
+
+        // Identifies the cell in the results file
+        String key() {
+            return source + "\t" + target + "\t" + seed + "\t" + populationSize + "\t" + generations
+                    + "\t" + uniformRate + "\t" + mutationRate + "\t" + tournamentSize + "\t" + elitism;
+        }
+
+        @Override
+        public String toString() {
+            return key().replace('\t', ' ');
+        }
+    }
+
+    private final List<Cell> cells;
+    private final File results;
+    private final int threads;
+    private final Quarantine quarantine;
+
+    public ExperimentRunner(List<Cell> cells, File results, int threads) throws IOException {
+        this.cells = cells;
+        this.results = results;
+        this.threads = threads;
+        this.quarantine = new Quarantine(new File(results.getPath() + ".quarantine"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ExperimentRunner <grid file> <results file> [threads]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        new ExperimentRunner(readGrid(args[0]), new File(args[1]), threads).run();
+    }
+
+    // Runs every cell that is not in the results file yet
+    public void run() throws Exception {
+        Set<String> finished = readFinished(results);
+        List<Cell> pending = new ArrayList<Cell>();
+        for (Cell cell : cells) {
+            if (!finished.contains(cell.key())) {
+                pending.add(cell);
+            }
+        }
+        System.out.println("INFO: " + (cells.size() - pending.size()) + " cells already finished, " + pending.size() + " to run");
+        if (pending.isEmpty()) return;
+
+        // Load every dataset once; all runs read the same instances
+        final Map<String, Dataset> datasets = new HashMap<String, Dataset>();
+        for (Cell cell : pending) {
+            if (!datasets.containsKey(cell.source)) datasets.put(cell.source, Dataset.load(cell.source));
+            if (!datasets.containsKey(cell.target)) datasets.put(cell.target, Dataset.load(cell.target));
+        }
+
+        boolean writeHeader = !results.exists() || results.length() == 0;
+        final Writer out = new OutputStreamWriter(new FileOutputStream(results, true), StandardCharsets.UTF_8);
+        if (writeHeader) {
+            out.write(HEADER + "\n");
+            out.flush();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Cell cell : pending) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            String line = runCell(cell, datasets.get(cell.source), datasets.get(cell.target), quarantine);
+                            append(out, line);
+                            System.out.println("INFO: Finished " + cell);
+                        } catch (Exception e) {
+                            System.out.println("Cell " + cell + " failed: " + e);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            out.close();
+        }
+    }
+
+    // Runs the scenarios of a cell with its GA settings and returns its line for the results file
+    static String runCell(Cell cell, Dataset source, Dataset target, Quarantine quarantine) throws Exception {
+        // The settings are per thread, so cells running concurrently each use their own
+        GAConfig previous = Algorithm.config();
+        Algorithm.setConfig(cell.config());
+        try {
+            return runScenarios(cell, source, target, quarantine);
+        } finally {
+            Algorithm.setConfig(previous);
+        }
+    }
+
+    private static String runScenarios(Cell cell, Dataset source, Dataset target, Quarantine quarantine) throws Exception {
+        long start = System.currentTimeMillis();
+        Algorithm.setSeed(cell.seed);
+
+        // Train on the source and check how the solution does on the target
+        FitnessCalc sourceCalc = new FitnessCalc(source);
+        sourceCalc.setQuarantine(quarantine);
+        Population pop = new Population(cell.populationSize, true, sourceCalc);
+        int[] best = evolve(pop, cell.generations);
+        double sourceTraining = Model.calculate(best, source);
+        double crossValidation = Model.calculate(best, target);
+
+        // Transplant the solution into a population trained on the target
+        FitnessCalc targetCalc = new FitnessCalc(target);
+        targetCalc.setQuarantine(quarantine);
+        Individual transplant = Individual.createWithGenes(best, targetCalc);
+        Population transferPop = new Population(cell.populationSize, transplant);
+        int[] transferBest = evolve(transferPop, cell.generations);
+        double transferTraining = Model.calculate(transferBest, target);
+
+        long millis = System.currentTimeMillis() - start;
+        return cell.key() + "\t" + sourceTraining + "\t" + crossValidation + "\t" + transferTraining
+                + "\t" + millis + "\t" + FitnessCalc.toString(transferBest);
+    }
+
+    // Evolves a population for the given number of generations and returns the genes of its fittest individual
+    private static int[] evolve(Population pop, int generations) throws Exception {
+        for (int generation = 0; generation < generations; generation++) {
+            pop = Algorithm.evolvePopulation(pop);
+        }
+        return pop.getFittest().vectorizeNumeric();
+    }
+
+    // Lines are written whole and flushed right away, so a crash never leaves a partial cell behind
+    private static synchronized void append(Writer out, String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+    }
+
+    // Reads the keys of the cells already present in a results file
+    static Set<String> readFinished(File results) throws IOException {
+        Set<String> finished = new HashSet<String>();
+        if (!results.exists()) return finished;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(results), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // Skip the header and any line cut short by a crash
+                if (fields.length < HEADER.split("\t").length || line.startsWith("source\t")) continue;
+                StringBuilder key = new StringBuilder(fields[0]);
+                for (int i = 1; i < KEY_COLUMNS; i++) {
+                    key.append('\t').append(fields[i]);
+                }
+                finished.add(key.toString());
+            }
+        } finally {
+            reader.close();
+        }
+        return finished;
+    }
+
+    // Reads a grid file and expands it into the cross product of its dimensions
+    static List<Cell> readGrid(String filename) throws IOException {
+        Map<String, String[]> dims = new LinkedHashMap<String, String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                int eq = line.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("Expected 'name = values': " + line);
+                String[] values = line.substring(eq + 1).split(",");
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = values[i].trim();
+                }
+                dims.put(line.substring(0, eq).trim(), values);
+            }
+        } finally {
+            reader.close();
+        }
+
+        String[] sources = require(dims, "source");
+        String[] targets = dims.containsKey("target") ? dims.get("target") : sources;
+        String[] seeds = dims.containsKey("seed") ? dims.get("seed") : new String[] {"1"};
+        String[] populations = values(dims, "population", GAConfig.DEFAULT.populationSize);
+        String[] generations = values(dims, "generations", 300);
+        String[] uniformRates = values(dims, "uniformRate", GAConfig.DEFAULT.uniformRate);
+        String[] mutationRates = values(dims, "mutationRate", GAConfig.DEFAULT.mutationRate);
+        String[] tournamentSizes = values(dims, "tournamentSize", GAConfig.DEFAULT.tournamentSize);
+        String[] elitisms = values(dims, "elitism", GAConfig.DEFAULT.elitism);
+
+        List<Cell> cells = new ArrayList<Cell>();
+        for (String source : sources)
+            for (String target : targets)
+                for (String seed : seeds)
+                    for (String population : populations)
+                        for (String generation : generations)
+                            for (String uniformRate : uniformRates)
+                                for (String mutationRate : mutationRates)
+                                    for (String tournamentSize : tournamentSizes)
+                                        for (String elitism : elitisms) {
+                                            Cell cell = new Cell(source, target, Long.parseLong(seed),
+                                                    Integer.parseInt(population), Integer.parseInt(generation),
+                                                    Double.parseDouble(uniformRate), Double.parseDouble(mutationRate),
+                                                    Integer.parseInt(tournamentSize), Boolean.parseBoolean(elitism));
+                                            // Rejects settings out of range before any cell runs
+                                            cell.config();
+                                            cells.add(cell);
+                                        }
+        return cells;
+    }
+
+    // The values of a dimension, or its default value if the grid does not list it
+    private static String[] values(Map<String, String[]> dims, String name, Object defaultValue) {
+        return dims.containsKey(name) ? dims.get(name) : new String[] {String.valueOf(defaultValue)};
+    }
+
+    private static String[] require(Map<String, String[]> dims, String name) {
+        String[] values = dims.get(name);
+        if (values == null) throw new IllegalArgumentException("Missing grid dimension: " + name);
+        return values;
+    }
+}
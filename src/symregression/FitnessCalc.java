@@ -8,24 +8,528 @@
 
 package symregression;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class FitnessCalc {
 
+    // Number of cached fitness values after which the cache is emptied
+    static final int CACHE_LIMIT = 100000;
+    // Number of rows in the probe sample used for semantic fingerprints
+    static final int PROBE_SIZE = 16;
+    // Fitness of solutions that went over the evaluation budget, below any correlation
+    static final double PENALTY = -1;
+
+    // Calculator used by individuals that were not given one. It scores against the training
+    // data loaded into Model, as the original single-run flow does
+    static final FitnessCalc MODEL = new FitnessCalc((Dataset) null);
+
+    // Training data of this calculator, or null to use the data loaded into Model
+    private final Dataset training;
+    // Datasets scored together instead of the training data, or null
+    private final MultiTaskFitness tasks;
+
+    // Fitness of the solutions scored so far, by canonical form. Equivalent genomes share one entry
+    private final ConcurrentHashMap<String, Double> cache = new ConcurrentHashMap<String, Double>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    // Whether solutions are fingerprinted on the probe sample before a full evaluation
+    private volatile boolean fingerprinting = false;
+    // Rows of the probe sample, taken when first needed
+    private volatile double[][] probe = null;
+    // Fitness of the solutions scored so far, by their outputs on the probe sample
+    private final ConcurrentHashMap<Fingerprint, Double> fingerprints = new ConcurrentHashMap<Fingerprint, Double>();
+    private final AtomicLong fingerprintHits = new AtomicLong();
+
+    // Limits on the evaluation of one solution
+    private volatile EvaluationBudget budget = EvaluationBudget.DEFAULT;
+    // Solutions known to go over the budget, given the penalty without being evaluated
+    private volatile Quarantine quarantine = new Quarantine();
+    private final AtomicLong budgetExceeded = new AtomicLong();
+    private final AtomicLong quarantineHits = new AtomicLong();
+    // Number of solutions actually evaluated on the training data
+    private final AtomicLong evaluations = new AtomicLong();
+    // Number of those evaluated in a batch with BatchEvaluation
+    private final AtomicLong batchedEvaluations = new AtomicLong();
+    // Number of those evaluated together with SharedEvaluation
+    private final AtomicLong sharedEvaluations = new AtomicLong();
+    // Number of subexpressions whose values were computed by those, not taken from other solutions
+    // or kept from earlier generations
+    private final AtomicLong subexpressions = new AtomicLong();
+    // Compiled solutions by canonical form, shared with calculators on other views of the same
+    // dataset, or null to compile each solution for its evaluation
+    private volatile ConcurrentHashMap<String, CompiledGenome> compiled = null;
+    // Whether populations are evaluated together, sharing their subexpressions
+    private volatile boolean sharing = false;
+    // Whether populations that are not shared are evaluated in one pass over the training data
+    private volatile boolean batching = false;
+    // Pool each solution is evaluated on, split into chunks of rows, or null for the calling thread
+    private volatile ForkJoinPool pool = null;
+    // Memory budget of the values of subexpressions kept across generations, zero for none
+    private volatile long subtreeBytes = 0;
+    // Values of subexpressions kept across generations, created for the data they are needed on
+    private SharedEvaluation subtrees = null;
+
+    // Creates a calculator that scores individuals against its own training data,
+    // independently of the state of Model
+    public FitnessCalc(Dataset training) {
+        this.training = training;
+        this.tasks = null;
+    }
+
+    // Creates a calculator that scores individuals on several datasets at once, with the
+    // aggregate of their correlations as fitness
+    public FitnessCalc(MultiTaskFitness tasks) {
+        this.training = null;
+        this.tasks = tasks;
+    }
+
+    // Scores a solution against the training data of this calculator
+    double evaluate(int[] sol) {
+        String canonicalForm;
+        try {
+            canonicalForm = Canonicalizer.canonicalForm(sol);
+        } catch (RuntimeException e) {
+            canonicalForm = null; // Genes out of range, left to the evaluation to deal with
+        }
+        return evaluate(sol, canonicalForm);
+    }
+
+    // Scores a solution whose canonical form is already known, reusing the fitness of an
+    // equivalent solution if there is one. A null canonical form bypasses the cache
+    double evaluate(int[] sol, String canonicalForm) {
+        if (canonicalForm == null) {
+            return score(sol, toString(sol));
+        }
+        Double cached = cache.get(canonicalForm);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        cacheMisses.incrementAndGet();
+
+        Fingerprint fingerprint = fingerprinting && !quarantine.contains(datasetKey(), canonicalForm) ? fingerprint(sol) : null;
+        if (fingerprint != null) {
+            Double known = fingerprints.get(fingerprint);
+            if (known != null) {
+                fingerprintHits.incrementAndGet();
+                cache.put(canonicalForm, known);
+                return known;
+            }
+        }
+
+        double fitness = score(sol, canonicalForm);
+        if (cache.size() >= CACHE_LIMIT) {
+            cache.clear();
+            fingerprints.clear();
+        }
+        cache.put(canonicalForm, fitness);
+        if (fingerprint != null) {
+            fingerprints.put(fingerprint, fitness);
+        }
+        return fitness;
+    }
+
+    // Forgets all cached fitness values. Needed whenever the training data changes
+    public void clearCache() {
+        cache.clear();
+        fingerprints.clear();
+        probe = null;
+    }
+
+    // Forgets the solutions quarantined so far, on all datasets
+    public void clearQuarantine() {
+        quarantine.clear();
+    }
+
+    // Enables or disables the probe sample pre-screen. When enabled, a solution whose outputs on the
+    // probe rows exactly match those of an already scored solution gets that solution's fitness
+    // without a full evaluation. This is exact when the training data has no more rows than the probe
+    // and a close approximation otherwise, so it is off by default
+    public void setFingerprinting(boolean fingerprinting) {
+        this.fingerprinting = fingerprinting;
+    }
+
+    // Sets the limits on the evaluation of one solution, or null for none
+    public void setBudget(EvaluationBudget budget) {
+        this.budget = budget;
+    }
+
+    // Sets the quarantine that solutions going over the budget are added to and looked up in.
+    // It can be shared between calculators
+    public void setQuarantine(Quarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    // Shares compiled solutions with other calculators whose training data are views of the same
+    // dataset, e.g. the folds of a cross-validation. See Dataset.view
+    void setCompiledGenomes(ConcurrentHashMap<String, CompiledGenome> compiled) {
+        this.compiled = compiled;
+    }
+
+    // Compiles a solution for the training data, or takes it from the shared compiled solutions
+    CompiledGenome compile(int[] sol, String key) {
+        ConcurrentHashMap<String, CompiledGenome> compiled = this.compiled;
+        if (compiled == null) {
+            return CompiledGenome.compile(sol, data());
+        }
+        CompiledGenome genome = compiled.get(key);
+        if (genome == null) {
+            genome = CompiledGenome.compile(sol, data());
+            if (compiled.size() >= CACHE_LIMIT) compiled.clear();
+            compiled.put(key, genome);
+        }
+        return genome;
+    }
+
+    // Enables or disables evaluating the individuals of a generation together with SharedEvaluation,
+    // so that subexpressions shared by several of them are computed once. Gives the same fitness values.
+    // Calculators scoring several datasets at once, or training data off the heap, do not share
+    public void setSharing(boolean sharing) {
+        this.sharing = sharing;
+    }
+
+    // Enables or disables evaluating the individuals of a generation with BatchEvaluation, reading the
+    // training data once for all of them instead of once per individual. Gives the same fitness values
+    // but skips the probe sample pre-screen. Used when sharing is off
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    // Evaluates each solution on the given pool, with the rows of the training data split into chunks,
+    // so that a single evaluation on a large dataset uses several cores. Null evaluates on the calling
+    // thread. Fitness values may differ in the last bits from those of a single thread
+    public void setParallelism(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Keeps the values of subexpressions on the training data across generations, within about the
+    // given number of bytes, so that a mutated or crossed-over solution only computes the subexpressions
+    // that changed. Zero or less disables it. The values are dropped when the training data changes.
+    // Like setSharing, which it implies, it applies to the individuals of a generation scored together
+    public synchronized void setSubtreeCache(long maxBytes) {
+        this.subtreeBytes = Math.max(maxBytes, 0);
+        this.subtrees = null;
+    }
+
+    // The values of subexpressions kept for the given data, or null if they are not kept
+    private synchronized SharedEvaluation subtrees(Dataset data) {
+        if (subtreeBytes == 0 || data == null) {
+            return null;
+        }
+        if (subtrees == null || subtrees.getData() != data) {
+            subtrees = new SharedEvaluation(data, subtreeBytes);
+        }
+        return subtrees;
+    }
+
+    // The training data of this calculator, or the data loaded into Model
+    private Dataset data() {
+        return training != null ? training : Model.getTrainingDataset();
+    }
+
+    // Scores the given individuals of one generation together, computing each distinct subexpression
+    // once, within the budget. Individuals this cannot score (invalid genes, quarantined, or at risk of
+    // huge powers, whose values are not worth keeping) are left to be scored on their own
+    void evaluateShared(List<Individual> individuals) {
+        Dataset data = tasks != null ? null : data();
+        SharedEvaluation subtrees = subtrees(data);
+        if (!sharing && subtrees == null) {
+            if (batching) evaluateBatch(individuals);
+            return;
+        }
+        if (data == null || (subtrees == null && data.isOffHeap())) {
+            return;
+        }
+        SharedEvaluation shared = subtrees != null ? subtrees : new SharedEvaluation(data);
+        String dataset = datasetKey();
+        for (Individual indiv : individuals) {
+            String canonicalForm = indiv.getCanonicalForm();
+            if (canonicalForm == null || quarantine.contains(dataset, canonicalForm)) continue;
+            Double cached = cache.get(canonicalForm);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                indiv.setFitness(cached);
+                continue;
+            }
+            CompiledGenome genome = compile(indiv.vectorizeNumeric(), canonicalForm);
+            if (!isShareable(genome)) continue;
+
+            cacheMisses.incrementAndGet();
+            evaluations.incrementAndGet();
+            sharedEvaluations.incrementAndGet();
+            double fitness;
+            synchronized (shared) {
+                long computed = shared.getComputed();
+                try {
+                    fitness = shared.correlate(genome, budget);
+                } catch (EvaluationBudget.Exceeded e) {
+                    budgetExceeded.incrementAndGet();
+                    quarantine.add(dataset, canonicalForm, e.getMessage());
+                    fitness = PENALTY;
+                }
+                subexpressions.addAndGet(shared.getComputed() - computed);
+            }
+            if (training == null && fitness != PENALTY) {
+                // As Model.calculateTraining does for the solutions it scores
+                Model.getTrainingHallOfFame().offer(indiv.vectorizeNumeric(), fitness);
+            }
+            if (cache.size() >= CACHE_LIMIT) {
+                cache.clear();
+                fingerprints.clear();
+            }
+            cache.put(canonicalForm, fitness);
+            indiv.setFitness(fitness);
+        }
+    }
+
+    // Scores the given individuals together whatever the settings of this calculator: shared if sharing
+    // or the subtree cache is on, and the rest in one pass over the training data. Individuals with
+    // invalid genes or quarantined are left to be scored on their own
+    void evaluateTogether(List<Individual> individuals) {
+        if (sharing || subtreeBytes > 0) {
+            evaluateShared(individuals);
+        }
+        List<Individual> rest = new ArrayList<Individual>();
+        for (Individual indiv : individuals) {
+            if (!indiv.hasFitness()) rest.add(indiv);
+        }
+        evaluateBatch(rest);
+    }
+
+    // Scores the given individuals of one generation in one pass over the training data, within the
+    // budget, or in one pass over each dataset when scoring several at once. Individuals with invalid
+    // genes or quarantined are left to be scored on their own
+    private void evaluateBatch(List<Individual> individuals) {
+        Dataset data = tasks != null ? null : data();
+        if (data == null && tasks == null) {
+            return;
+        }
+        List<Individual> batch = new ArrayList<Individual>();
+        List<String> keys = new ArrayList<String>();
+        List<CompiledGenome> genomes = new ArrayList<CompiledGenome>();
+        Set<String> batched = new HashSet<String>();
+        String dataset = datasetKey();
+        for (Individual indiv : individuals) {
+            String canonicalForm = indiv.getCanonicalForm();
+            if (canonicalForm == null || quarantine.contains(dataset, canonicalForm)) continue;
+            Double cached = cache.get(canonicalForm);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                indiv.setFitness(cached);
+                continue;
+            }
+            if (!batched.add(canonicalForm)) {
+                continue; // Equivalent to an individual already in the batch, whose fitness it gets from the cache
+            }
+            batch.add(indiv);
+            keys.add(canonicalForm);
+            genomes.add(tasks != null ? tasks.compile(indiv.vectorizeNumeric()) : compile(indiv.vectorizeNumeric(), canonicalForm));
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        EvaluationBudget.Exceeded[] exceeded = new EvaluationBudget.Exceeded[batch.size()];
+        CompiledGenome[] compiled = genomes.toArray(new CompiledGenome[0]);
+        double[] correlations = tasks != null ? tasks.scores(compiled, budget, exceeded)
+                : BatchEvaluation.correlate(compiled, data, budget, exceeded);
+        for (int i = 0; i < batch.size(); i++) {
+            cacheMisses.incrementAndGet();
+            evaluations.incrementAndGet();
+            batchedEvaluations.incrementAndGet();
+            double fitness = correlations[i];
+            if (exceeded[i] != null) {
+                budgetExceeded.incrementAndGet();
+                quarantine.add(dataset, keys.get(i), exceeded[i].getMessage());
+                fitness = PENALTY;
+            } else if (training == null && tasks == null) {
+                // As Model.calculateTraining does for the solutions it scores
+                Model.getTrainingHallOfFame().offer(batch.get(i).vectorizeNumeric(), fitness);
+            }
+            if (cache.size() >= CACHE_LIMIT) {
+                cache.clear();
+                fingerprints.clear();
+            }
+            cache.put(keys.get(i), fitness);
+            batch.get(i).setFitness(fitness);
+        }
+    }
+
+    // Number of full evaluations saved by the probe sample pre-screen
+    public long getFingerprintHits() {
+        return fingerprintHits.get();
+    }
+
+    // Summary of the evaluation work done and saved by this calculator
+    public String report() {
+        long hits = cacheHits.get();
+        long fingerprinted = fingerprintHits.get();
+        long computed = cacheMisses.get() - fingerprinted;
+        return "Fitness evaluations: " + computed + " computed (" + batchedEvaluations.get() + " in batches, "
+                + sharedEvaluations.get() + " shared), "
+                + hits + " from cache, " + fingerprinted + " from fingerprints, " + budgetExceeded.get() + " over budget, "
+                + quarantineHits.get() + " quarantined";
+    }
+
+    // Evaluates a solution on the probe sample. Returns null if the genes do not form an expression
+    private Fingerprint fingerprint(int[] sol) {
+        CompiledGenome genome;
+        try {
+            genome = CompiledGenome.compile(sol);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        double[][] rows = probeRows();
+        double[] outputs = new double[rows.length];
+        EvaluationBudget budget = this.budget;
+        EvaluationBudget.Meter meter = budget == null ? null : budget.start(rows.length);
+        try {
+            for (int i = 0; i < rows.length; i++) {
+                outputs[i] = genome.evaluate(rows[i], meter);
+            }
+        } catch (EvaluationBudget.Exceeded e) {
+            return null; // Left to the full evaluation, which quarantines the solution
+        }
+        return new Fingerprint(outputs);
+    }
+
+    // Takes PROBE_SIZE rows spread evenly over the training data, or all rows of smaller datasets
+    private double[][] probeRows() {
+        double[][] rows = probe;
+        if (rows == null) {
+            // With several datasets, the probe is taken from the first one
+            Dataset data = tasks != null ? tasks.getDatasets().get(0) : training;
+            int size = data == null ? Model.getTrainingSize() : data.size();
+            int count = Math.min(PROBE_SIZE, size);
+            rows = new double[count][];
+            for (int i = 0; i < count; i++) {
+                int index = (int) ((long) i * size / count);
+                rows[i] = data == null ? Model.getTrainingRow(index) : data.getRow(index);
+            }
+            probe = rows;
+        }
+        return rows;
+    }
+
+    // Outputs of a solution on the probe sample, compared and hashed bit for bit
+    private static class Fingerprint {
+        private final double[] outputs;
+        private final int hash;
+
+        Fingerprint(double[] outputs) {
+            this.outputs = outputs;
+            this.hash = Arrays.hashCode(outputs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint && Arrays.equals(outputs, ((Fingerprint) o).outputs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Number of solutions actually evaluated on the training data, whatever the cache and
+    // fingerprints saved
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    // Number of the evaluations done in a batch with BatchEvaluation
+    public long getBatchedEvaluations() {
+        return batchedEvaluations.get();
+    }
+
+    // Number of the evaluations done together with SharedEvaluation
+    public long getSharedEvaluations() {
+        return sharedEvaluations.get();
+    }
+
+    // Number of subexpressions computed by the shared evaluations, which the subtree cache lowers
+    public long getSubexpressionsComputed() {
+        return subexpressions.get();
+    }
+
+    // Number of evaluations answered from the cache
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    // Number of evaluations that had to be computed
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    // Computes the fitness of a solution on the training data within the budget. Solutions that
+    // are quarantined or go over the budget get the penalty. key identifies the solution in the quarantine
+    private double score(int[] sol, String key) {
+        String dataset = datasetKey();
+        if (quarantine.contains(dataset, key)) {
+            quarantineHits.incrementAndGet();
+            return PENALTY;
+        }
+        evaluations.incrementAndGet();
+        try {
+            if (tasks != null) {
+                return tasks.score(sol, budget);
+            }
+            if (training == null) {
+                return Model.calculateTraining(sol, budget);
+            }
+            return compile(sol, key).correlate(training, budget, pool);
+        } catch (EvaluationBudget.Exceeded e) {
+            budgetExceeded.incrementAndGet();
+            quarantine.add(dataset, key, e.getMessage());
+            return PENALTY;
+        }
+    }
+
+    // Identifies the data this calculator scores on in the quarantine: the name and size of the
+    // training data, or of each dataset scored together
+    private String datasetKey() {
+        List<Dataset> datasets = tasks != null ? tasks.getDatasets() : Collections.singletonList(data());
+        StringBuilder key = new StringBuilder();
+        for (Dataset data : datasets) {
+            if (key.length() > 0) key.append(" + ");
+            key.append(data == null ? "none" : data.getName() + " (" + data.size() + " rows)");
+        }
+        return key.toString();
+    }
+
+    // Whether a solution is evaluated with SharedEvaluation. Solutions at risk of huge powers, the ones
+    // the budget is there for, are not, so that their values do not fill the shared columns
+    private static boolean isShareable(CompiledGenome genome) {
+        return !genome.getAnalysis().getRisks().contains(IntervalAnalysis.Risk.EXPONENT_BLOWUP);
+    }
+
     // Calculates the fitness of an individual. The fitness is determined by how well
     // the individual's genes match up to the optimal solution represented by the model's training function.
     static double getFitness(Individual individual) throws Exception {
         double fitness = 0;
         
         // Create a solution array to store the individual's genes
-        int[] sol = new int[15];
+        int[] sol = new int[individual.size()];
         
         // Copy genes from the individual to the solution array
-        for (int i = 0; i < 15; i++) {        	
+        for (int i = 0; i < sol.length; i++) {        	
         	sol[i] = individual.getGene(i);
         }
         
         // Calculate the fitness of the individual based on the training model
         // The fitness is typically a measure of how close the individual is to an optimal solution
-        fitness = Model.calculateTraining(sol);
+        fitness = individual.fitnessCalc.evaluate(sol, individual.getCanonicalForm());
         
         // Uncomment to debug: Print the solution and its fitness value
         // System.out.println(toString(sol) + "->" + fitness);
@@ -8,26 +8,34 @@
 
 package symregression;
 
+import java.util.List;
+
 public class GA {
 
-    // Main method for the primary execution flow
+    // Main method for the primary execution flow. GA settings can be given as name=value
+    // arguments, e.g. "populationSize=50 mutationRate=0.1"; see GAConfig
     public static void main(String[] args) {
 
+        GAConfig config = GAConfig.parse(String.join(",", args));
+        Algorithm.setConfig(config);
+        int populationSize = config.populationSize;
+
         // Training a solution. The context does not matter
         loadData(".//data//rg.txt");
-        Population myPop = initializePopulation(25);
+        Population myPop = initializePopulation(populationSize);
         evolvePopulation(myPop);
-        int[] IndividualforTransplant = Model.getBestTrainingSolution();
+        // The best distinct solutions found, best first
+        List<int[]> IndividualsforTransplant = Model.getTrainingHallOfFame().getGenes();
         Model.printBestTrainingSolution();
         Model.printBestValidationSolution();
         
         Model.reset();
         
         // Case 1. Accelerating the training phase of other problems
-        // Transplant of the best individual to another problem
+        // Transplant of the best individuals to another problem
         // Example to see how fast the training converges
         loadData(".//data//mc.txt");
-        Population myPop2 = initializePopulation(25, IndividualforTransplant);
+        Population myPop2 = initializePopulation(populationSize, IndividualsforTransplant);
         evolvePopulation(myPop2);
         Model.printBestTrainingSolution();
         Model.printBestValidationSolution();
@@ -39,7 +47,7 @@ public class GA {
         // This time, the population is initialized with prior knowledge from a previous problem
         // Example to see how fast the optimal test can be achieved
         loadData(".//data//rg.txt", ".//data//mc.txt");
-        Population myPop3 = initializePopulation(25, IndividualforTransplant);
+        Population myPop3 = initializePopulation(populationSize, IndividualsforTransplant);
         // Evolve the new population and print the best solutions
         evolvePopulation(myPop3);
         Model.printBestTrainingSolution();
@@ -48,19 +56,25 @@ public class GA {
     }
     
     // Loads training and validation data from the same path
-    private static void loadData(String path1) {
+    static void loadData(String path1) {
         Model.load_training(path1);
         Model.load_validation(path1);
     }
     
+    // Uses an already loaded dataset as both training and validation data
+    static void loadData(Dataset data) {
+        Model.load_training(data);
+        Model.load_validation(data);
+    }
+
     // Loads training and validation data from two different paths
-    private static void loadData(String path1, String path2) {
+    static void loadData(String path1, String path2) {
         Model.load_training(path1);
         Model.load_validation(path2);
     }
 
     // Initializes a population with a specified size
-    private static Population initializePopulation(int size) {
+    static Population initializePopulation(int size) {
         try {
             return new Population(size, true);
         } catch (Exception e) {
@@ -69,11 +83,10 @@ public class GA {
         }
     }
 
-    // Initializes a population with a specified size and a predefined solution
-    private static Population initializePopulation(int size, int[] sol) {
+    // Initializes a population with a specified size and predefined solutions
+    static Population initializePopulation(int size, List<int[]> sols) {
         try {
-            Individual in = Individual.createWithGenes(sol);
-            return new Population(size, in);
+            return HallOfFame.seed(size, sols, FitnessCalc.MODEL);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -81,10 +94,19 @@ public class GA {
     }
 
     // Evolves a given population through generations until certain criteria are met
-    private static void evolvePopulation(Population myPop) {
+    static void evolvePopulation(Population myPop) {
+        evolvePopulation(myPop, Termination.standard());
+    }
+
+    // Evolves a given population through generations until the termination criteria are met,
+    // returning the last population
+    static Population evolvePopulation(Population myPop, Termination termination) {
         int generationCount = 0;
         try {
-            while (isEvolutionContinuing(myPop, generationCount)) {
+            // Each generation is scored together, where its calculator can, before the termination
+            // criteria and the reports below read the fitness of its individuals one by one
+            myPop.evaluate();
+            while (!termination.shouldStop(myPop, generationCount)) {
                 generationCount++;
                 System.out.println("Generation: " + generationCount);
 
@@ -97,14 +119,12 @@ public class GA {
 
                 // Evolve the population to the next generation
                 myPop = Algorithm.evolvePopulation(myPop);
+                myPop.evaluate();
             }
+            System.out.println("INFO: Stopped after " + generationCount + " generations: " + termination.getReason());
         } catch (Exception e) {
             e.printStackTrace();
         }
-    }
-
-    // Determines whether the evolution process should continue based on fitness and generation count
-    private static boolean isEvolutionContinuing(Population myPop, int generationCount) throws Exception {
-        return myPop.getFittest().getFitness() < FitnessCalc.getMaxFitness() && generationCount < 300;
+        return myPop;
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+/**
+ * Settings of the genetic algorithm. Instances are immutable; Algorithm uses the settings
+ * installed on the calling thread with Algorithm.setConfig, or DEFAULT.
+ *
+ * Settings can be written as a comma separated list of name=value pairs, for example
+ *   populationSize=50, mutationRate=0.1, tournamentSize=3
+ * Settings that are not listed keep their default value.
+ */
+public class GAConfig {
+
+    // The settings the algorithm was originally tuned with
+    public static final GAConfig DEFAULT = new GAConfig(25, 0.7, 0.2, 5, true, true);
+
+    // Number of individuals in a population
+    public final int populationSize;
+    // Probability of using the same gene from one of the parents
+    public final double uniformRate;
+    // Probability of mutating a gene
+    public final double mutationRate;
+    // Number of individuals selected for tournament selection
+    public final int tournamentSize;
+    // Determines whether the best individual is passed on to the next generation
+    public final boolean elitism;
+    // Determines whether individuals equivalent to another one of the generation are mutated away
+    public final boolean filterDuplicates;
+    // Maximum number of hill climbing steps applied to the elite each generation, 0 for none. See LocalSearch
+    public final int localSearchSteps;
+
+    public GAConfig(int populationSize, double uniformRate, double mutationRate, int tournamentSize,
+            boolean elitism, boolean filterDuplicates) {
+        this(populationSize, uniformRate, mutationRate, tournamentSize, elitism, filterDuplicates, 0);
+    }
+
+    public GAConfig(int populationSize, double uniformRate, double mutationRate, int tournamentSize,
+            boolean elitism, boolean filterDuplicates, int localSearchSteps) {
+        if (populationSize < 1) throw new IllegalArgumentException("Population size must be positive: " + populationSize);
+        if (tournamentSize < 1) throw new IllegalArgumentException("Tournament size must be positive: " + tournamentSize);
+        if (uniformRate < 0 || uniformRate > 1) throw new IllegalArgumentException("Uniform rate must be within [0, 1]: " + uniformRate);
+        if (mutationRate < 0 || mutationRate > 1) throw new IllegalArgumentException("Mutation rate must be within [0, 1]: " + mutationRate);
+        if (localSearchSteps < 0) throw new IllegalArgumentException("Local search steps must not be negative: " + localSearchSteps);
+        this.populationSize = populationSize;
+        this.uniformRate = uniformRate;
+        this.mutationRate = mutationRate;
+        this.tournamentSize = tournamentSize;
+        this.elitism = elitism;
+        this.filterDuplicates = filterDuplicates;
+        this.localSearchSteps = localSearchSteps;
+    }
+
+    // Reads settings written as name=value pairs, starting from the default ones
+    public static GAConfig parse(String text) {
+        int populationSize = DEFAULT.populationSize;
+        double uniformRate = DEFAULT.uniformRate;
+        double mutationRate = DEFAULT.mutationRate;
+        int tournamentSize = DEFAULT.tournamentSize;
+        boolean elitism = DEFAULT.elitism;
+        boolean filterDuplicates = DEFAULT.filterDuplicates;
+        int localSearchSteps = DEFAULT.localSearchSteps;
+        for (String pair : text.split(",")) {
+            if (pair.trim().length() == 0) continue;
+            int eq = pair.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected name=value: " + pair.trim());
+            String name = pair.substring(0, eq).trim();
+            String value = pair.substring(eq + 1).trim();
+            if (name.equals("populationSize")) {
+                populationSize = Integer.parseInt(value);
+            } else if (name.equals("uniformRate")) {
+                uniformRate = Double.parseDouble(value);
+            } else if (name.equals("mutationRate")) {
+                mutationRate = Double.parseDouble(value);
+            } else if (name.equals("tournamentSize")) {
+                tournamentSize = Integer.parseInt(value);
+            } else if (name.equals("elitism")) {
+                elitism = Boolean.parseBoolean(value);
+            } else if (name.equals("filterDuplicates")) {
+                filterDuplicates = Boolean.parseBoolean(value);
+            } else if (name.equals("localSearchSteps")) {
+                localSearchSteps = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+        return new GAConfig(populationSize, uniformRate, mutationRate, tournamentSize, elitism, filterDuplicates, localSearchSteps);
+    }
+
+    @Override
+    public String toString() {
+        return "populationSize=" + populationSize + ", uniformRate=" + uniformRate + ", mutationRate=" + mutationRate
+                + ", tournamentSize=" + tournamentSize + ", elitism=" + elitism + ", filterDuplicates=" + filterDuplicates
+                + ", localSearchSteps=" + localSearchSteps;
+    }
+}
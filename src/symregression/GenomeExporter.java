@@ -0,0 +1,285 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.Expression;
+
+/**
+ * Exports a trained solution as a standalone Java class, so that deploying a model needs neither
+ * the GA nor BigRational.
+ *
+ * The class has a single "static double score(double a, double b, double c, double d)" that
+ * computes the reduced expression of the solution in double arithmetic without allocating. A row
+ * that would fail in the reference evaluator (a division by zero, a negative exponent) becomes
+ * NaN, which the operators pass on, and NaN or infinite results give DEFAULT as in CompiledGenome.
+ * Exponents are rounded to 12 decimals and truncated like BigRational.intValue. Glued operands that
+ * contain a variable are read from their decimal text like the reference does, which is the one
+ * place the exported code allocates.
+ *
+ * Doubles are not exact rationals, so the exported function can differ from the reference. The
+ * verification harness runs both on a dataset and reports the rows on which they differ by more
+ * than a tolerance, which should be checked before a model is deployed.
+ */
+public class GenomeExporter {
+
+    /**
+     * Outcome of comparing an exported function with the reference evaluator.
+     */
+    public static class Verification {
+        public final int rows;
+        // Rows on which the two differ by more than the tolerance
+        public final int mismatches;
+        public final double maxError;
+        // Pearson correlation of each with the human judgements
+        public final double referenceCorrelation;
+        public final double exportedCorrelation;
+
+        Verification(int rows, int mismatches, double maxError, double referenceCorrelation, double exportedCorrelation) {
+            this.rows = rows;
+            this.mismatches = mismatches;
+            this.maxError = maxError;
+            this.referenceCorrelation = referenceCorrelation;
+            this.exportedCorrelation = exportedCorrelation;
+        }
+
+        public boolean passed() {
+            return mismatches == 0;
+        }
+
+        @Override
+        public String toString() {
+            return (passed() ? "passed" : "FAILED") + ": " + mismatches + " of " + rows + " rows beyond tolerance, max error "
+                    + maxError + ", correlation " + exportedCorrelation + " (reference " + referenceCorrelation + ")";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: GenomeExporter <genome file> <class name> <output directory> [<dataset> [tolerance]]");
+            return;
+        }
+        int[] sol = HallOfFame.load(args[0]).get(0);
+        String className = args[1];
+        File directory = new File(args[2]);
+
+        File source = writeSource(sol, className, directory);
+        System.out.println("INFO: Source written to " + source);
+        Method score = compile(source, className, directory);
+        if (score == null) {
+            System.out.println("WARNING: No Java compiler available, the source was not compiled");
+            return;
+        }
+        System.out.println("INFO: Class compiled into " + directory);
+        if (args.length > 3) {
+            double tolerance = args.length > 4 ? Double.parseDouble(args[4]) : 1e-9;
+            Verification verification = verify(score, sol, Dataset.load(args[3]), tolerance);
+            System.out.println("INFO: Verification " + verification);
+            if (!verification.passed()) System.exit(1);
+        }
+    }
+
+    /* Public methods */
+
+    /**
+     * Generate the source of a class that scores rows like a solution.
+     * @param sol The genes of the solution.
+     * @param className The name of the class, optionally with its package, e.g. "models.RgModel".
+     * @return The Java source.
+     */
+    public static String toJavaSource(int[] sol, String className) {
+        CompiledGenome genome = CompiledGenome.compile(sol);
+        int dot = className.lastIndexOf('.');
+        String simpleName = className.substring(dot + 1);
+
+        StringBuilder source = new StringBuilder();
+        if (dot > 0) {
+            source.append("package ").append(className, 0, dot).append(";\n\n");
+        }
+        source.append("/**\n");
+        source.append(" * Similarity model exported from a symbolic regression solution.\n");
+        source.append(" * Genes: ").append(FitnessCalc.toString(sol)).append('\n');
+        source.append(" * Expression: ").append(genome.getExpression()).append('\n');
+        source.append(" */\n");
+        source.append("public final class ").append(simpleName).append(" {\n\n");
+        source.append("    // Score of rows that cannot be evaluated\n");
+        source.append("    public static final double DEFAULT = ").append(literal(Model.DEFAULT)).append(";\n\n");
+        source.append("    private ").append(simpleName).append("() {\n    }\n\n");
+        source.append("    // Scores a word pair from its base measure scores\n");
+        source.append("    public static double score(double a, double b, double c, double d) {\n");
+        source.append("        double value = ").append(emit(genome.getExpression())).append(";\n");
+        source.append("        return Double.isNaN(value) || Double.isInfinite(value) ? DEFAULT : value;\n");
+        source.append("    }\n");
+        source.append(HELPERS);
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Write the source of a class that scores rows like a solution.
+     * @param sol The genes of the solution.
+     * @param className The name of the class, optionally with its package.
+     * @param directory The source root; packages become subdirectories.
+     * @return The source file.
+     */
+    public static File writeSource(int[] sol, String className, File directory) throws IOException {
+        File file = new File(directory, className.replace('.', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            out.write(toJavaSource(sol, className));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Compile an exported source file in-process and load its score method.
+     * @param source The source file.
+     * @param className The name of the class, with its package.
+     * @param directory The directory the class file is written to and loaded from.
+     * @return The score method, or null if the runtime has no Java compiler.
+     */
+    public static Method compile(File source, String className, File directory) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return null;
+        }
+        int status = compiler.run(null, null, null, "-d", directory.getPath(), source.getPath());
+        if (status != 0) {
+            throw new IllegalStateException("Could not compile " + source);
+        }
+        URLClassLoader loader = new URLClassLoader(new URL[] {directory.toURI().toURL()}, GenomeExporter.class.getClassLoader());
+        return loader.loadClass(className).getMethod("score", double.class, double.class, double.class, double.class);
+    }
+
+    /**
+     * Compare an exported score method with the reference evaluator on every row of a dataset.
+     * @param score The exported score method.
+     * @param sol The genes of the solution it was exported from.
+     * @param data The rows to compare on.
+     * @param tolerance The largest accepted difference, relative to the reference value when that exceeds 1.
+     * @return The outcome.
+     */
+    public static Verification verify(Method score, int[] sol, Dataset data, double tolerance) throws Exception {
+        CompiledGenome reference = CompiledGenome.compile(sol);
+        double[] expected = new double[data.size()];
+        double[] actual = new double[data.size()];
+        int mismatches = 0;
+        double maxError = 0;
+        for (int a = 0; a < data.size(); a++) {
+            double[] row = data.getRow(a);
+            expected[a] = reference.evaluate(row);
+            actual[a] = (Double) score.invoke(null, row[0], row[1], row[2], row[3]);
+            double error = Math.abs(actual[a] - expected[a]);
+            if (Double.isNaN(error) || error > tolerance * Math.max(1, Math.abs(expected[a]))) {
+                mismatches++;
+            }
+            if (!(error <= maxError)) maxError = error;
+        }
+        return new Verification(data.size(), mismatches, maxError,
+                Model.getPearson(data.getSource(), expected), Model.getPearson(data.getSource(), actual));
+    }
+
+    /* Helpers */
+
+    // Helpers of the exported class. NaN marks a failed value and is passed on by all of them
+    private static final String HELPERS =
+        "\n" +
+        "    private static double div(double x, double y) {\n" +
+        "        return y == 0 ? Double.NaN : x / y;\n" +
+        "    }\n" +
+        "\n" +
+        "    private static double max(double x, double y) {\n" +
+        "        return Double.isNaN(x) || Double.isNaN(y) ? Double.NaN : x >= y ? x : y;\n" +
+        "    }\n" +
+        "\n" +
+        "    private static double min(double x, double y) {\n" +
+        "        return Double.isNaN(x) || Double.isNaN(y) ? Double.NaN : x <= y ? x : y;\n" +
+        "    }\n" +
+        "\n" +
+        "    // Raises x to y rounded to 12 decimals and truncated, failing for negative exponents\n" +
+        "    private static double pow(double x, double y) {\n" +
+        "        if (Double.isNaN(x) || Double.isNaN(y)) return Double.NaN;\n" +
+        "        double rounded = Math.abs(y) < 1e6 ? Math.rint(y * 1e12) / 1e12 : y;\n" +
+        "        long n = (long) rounded;\n" +
+        "        if (n < 0) return Double.NaN;\n" +
+        "        double result = 1;\n" +
+        "        double base = x;\n" +
+        "        while (n > 0) {\n" +
+        "            if ((n & 1) != 0) result *= base;\n" +
+        "            base *= base;\n" +
+        "            n >>= 1;\n" +
+        "        }\n" +
+        "        return result;\n" +
+        "    }\n" +
+        "\n" +
+        "    // Reads operands written next to each other as one decimal number\n" +
+        "    private static double glued(String text) {\n" +
+        "        try {\n" +
+        "            return new java.math.BigDecimal(text).doubleValue();\n" +
+        "        } catch (NumberFormatException e) {\n" +
+        "            return Double.NaN;\n" +
+        "        }\n" +
+        "    }\n";
+
+    // Java expression computing an expression in double arithmetic
+    private static String emit(Expression expression) {
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            String left = emit(binary.leftOperand);
+            String right = emit(binary.rightOperand);
+            switch (binary.operator) {
+                case ADD: return "(" + left + " + " + right + ")";
+                case SUB: return "(" + left + " - " + right + ")";
+                case MUL: return "(" + left + " * " + right + ")";
+                case DIV: return "div(" + left + ", " + right + ")";
+                case MAX: return "max(" + left + ", " + right + ")";
+                case MIN: return "min(" + left + ", " + right + ")";
+                case POW: return "pow(" + left + ", " + right + ")";
+                default: throw new IllegalStateException("Unexpected operator: " + binary.operator);
+            }
+        }
+        if (expression instanceof Model.Variable) {
+            return Model.symbolsA[((Model.Variable) expression).index];
+        }
+        if (expression instanceof Model.Template) {
+            StringBuilder text = new StringBuilder("glued(");
+            int[] parts = ((Model.Template) expression).parts;
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) text.append(" + ");
+                text.append(parts[i] < 4 ? "String.valueOf(" + Model.symbolsA[parts[i]] + ")" : "\"" + Model.symbolsA[parts[i]] + "\"");
+            }
+            return text.append(")").toString();
+        }
+        return literal(expression.eval().doubleValue());
+    }
+
+    // Java literal of a double constant
+    private static String literal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return "Double.NaN";
+        String text = Double.toString(value);
+        return value < 0 ? "(" + text + ")" : text;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The best distinct solutions seen so far, with their scores, best first.
+ *
+ * Any number of threads can offer solutions without locks. The archive is an immutable sorted
+ * array behind an AtomicReference: an offer builds a new array with the solution in place and
+ * installs it with compare-and-set, starting over if another offer got in first. Offers that
+ * cannot make it into a full archive are turned away without any write, which is the common case
+ * once a run has found good solutions. Readers get a consistent snapshot at any time.
+ *
+ * Solutions are distinct by canonical form, so algebraically equivalent genomes take one place.
+ * Among equal scores the solution offered first ranks first. The archive can be written in the
+ * genome file format of ScoringServer and read back to seed the populations of another problem.
+ */
+public class HallOfFame {
+
+    /**
+     * An archived solution.
+     */
+    public static class Entry {
+        private final int[] genes;
+        public final double score;
+        // Canonical form, or the genes as text for genes that do not form an expression
+        final String key;
+
+        Entry(int[] genes, double score, String key) {
+            this.genes = genes;
+            this.score = score;
+            this.key = key;
+        }
+
+        public int[] getGenes() {
+            return genes.clone();
+        }
+
+        @Override
+        public String toString() {
+            return score + "\t" + FitnessCalc.toString(genes);
+        }
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private final int capacity;
+    private final AtomicReference<Entry[]> entries = new AtomicReference<Entry[]>(EMPTY);
+
+    public HallOfFame(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /* Public methods */
+
+    /**
+     * Offer a solution.
+     * @param genes The genes of the solution. They are copied.
+     * @param score Its score, higher is better.
+     * @return Whether the solution entered the archive.
+     */
+    public boolean offer(int[] genes, double score) {
+        if (Double.isNaN(score) || !canEnter(entries.get(), score)) {
+            return false;
+        }
+        String key = key(genes);
+        int[] copy = genes.clone();
+        while (true) {
+            Entry[] current = entries.get();
+            if (!canEnter(current, score)) {
+                return false;
+            }
+            int position = current.length;
+            int equivalent = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].key.equals(key)) {
+                    if (current[i].score >= score) return false;
+                    equivalent = i; // Scored lower, e.g. on other data, so it gives way
+                }
+                if (position == current.length && score > current[i].score) {
+                    position = i;
+                }
+            }
+            List<Entry> next = new ArrayList<Entry>(Arrays.asList(current));
+            next.add(position, new Entry(copy, score, key));
+            if (equivalent >= 0) {
+                next.remove(equivalent + 1); // It ranked below the new entry
+            }
+            if (next.size() > capacity) {
+                next.remove(next.size() - 1);
+            }
+            if (entries.compareAndSet(current, next.toArray(EMPTY))) {
+                return true;
+            }
+        }
+    }
+
+    // The archived solutions, best first, as they were at the time of the call
+    public List<Entry> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList(entries.get()));
+    }
+
+    // The best solution, or null if none was offered
+    public Entry best() {
+        Entry[] current = entries.get();
+        return current.length == 0 ? null : current[0];
+    }
+
+    // The genes of the archived solutions, best first
+    public List<int[]> getGenes() {
+        List<int[]> genes = new ArrayList<int[]>();
+        for (Entry entry : entries.get()) {
+            genes.add(entry.getGenes());
+        }
+        return genes;
+    }
+
+    public int size() {
+        return entries.get().length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Empties the archive
+    public void clear() {
+        entries.set(EMPTY);
+    }
+
+    /**
+     * Write the archive as a genome file that ScoringServer, load and seed can read: one
+     * "rankN = g0, g1, ..." line per solution, best first, each after a comment with its score.
+     * @param filename The path to the file.
+     */
+    public void export(String filename) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8);
+        try {
+            Entry[] current = entries.get();
+            for (int i = 0; i < current.length; i++) {
+                out.write("# score " + current[i].score + "\n");
+                String genes = FitnessCalc.toString(current[i].genes);
+                out.write("rank" + (i + 1) + " = " + genes.substring(1, genes.length() - 1) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the genes of the solutions in a genome file, e.g. one written by export.
+     * @param filename The path to the file.
+     * @return The genes, in the order of the file.
+     */
+    public static List<int[]> load(String filename) throws IOException {
+        List<int[]> solutions = new ArrayList<int[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                int eq = line.indexOf('=');
+                solutions.add(Model.parseGenes(eq > 0 ? line.substring(eq + 1) : line));
+            }
+        } finally {
+            reader.close();
+        }
+        return solutions;
+    }
+
+    /**
+     * Create a population for another problem that starts from archived solutions.
+     * @param populationSize The size of the population.
+     * @param solutions The genes to start from, e.g. from load. Only the first populationSize are used.
+     * @param fitnessCalc The calculator scoring the population.
+     * @return A population with the given solutions first and random individuals after them.
+     */
+    public static Population seed(int populationSize, List<int[]> solutions, FitnessCalc fitnessCalc) throws Exception {
+        Population pop = new Population(populationSize, true, fitnessCalc);
+        for (int i = 0; i < populationSize && i < solutions.size(); i++) {
+            pop.saveIndividual(i, Individual.createWithGenes(solutions.get(i), fitnessCalc));
+        }
+        return pop;
+    }
+
+    /* Helpers */
+
+    // Whether a score is high enough to enter the archive as it is
+    private boolean canEnter(Entry[] current, double score) {
+        return current.length < capacity || score > current[current.length - 1].score;
+    }
+
+    private static String key(int[] genes) {
+        try {
+            return Canonicalizer.canonicalForm(genes);
+        } catch (RuntimeException e) {
+            return FitnessCalc.toString(genes);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches GA settings that converge fast on a dataset, using Hyperband.
+ *
+ * Hyperband runs several brackets of successive halving. A bracket starts many randomly picked
+ * settings with a few generations each, keeps the best third, gives those three times as many
+ * generations, and so on until one setting has run for the full number of generations. Brackets
+ * differ in how many settings they start with and how few generations they first get, which
+ * hedges between settings that shine early and settings that need time. Trials are continued,
+ * not restarted, when they are given more generations, and the trials of a rung run concurrently.
+ */
+public class HyperparameterSearch {
+
+    // Fraction of trials kept at every rung is 1 / ETA, and their generations grow ETA times
+    private static final int ETA = 3;
+
+    // Values the settings are picked from
+    private static final int[] POPULATION_SIZES = {15, 25, 50};
+    private static final double[] UNIFORM_RATES = {0.5, 0.6, 0.7, 0.8};
+    private static final double[] MUTATION_RATES = {0.05, 0.1, 0.2, 0.3};
+    private static final int[] TOURNAMENT_SIZES = {2, 3, 5, 7};
+
+    /**
+     * One GA setting being tried, with the run it has made so far.
+     */
+    public static class Trial {
+        final GAConfig config;
+        // Random generator of the run, carried between the threads that continue it
+        private final Random random;
+        private Population population = null;
+        private int generations = 0;
+        private double score = Double.NEGATIVE_INFINITY;
+
+        Trial(GAConfig config, long seed) {
+            this.config = config;
+            this.random = new Random(seed);
+        }
+
+        // Evolves the run up to the given number of generations and scores its fittest individual
+        void advance(Dataset data, int targetGenerations) throws Exception {
+            Algorithm.setConfig(config);
+            Algorithm.setRandom(random);
+            if (population == null) {
+                population = new Population(config.populationSize, true, new FitnessCalc(data));
+            }
+            while (generations < targetGenerations) {
+                population = Algorithm.evolvePopulation(population);
+                generations++;
+            }
+            score = population.getFittest().getFitness();
+        }
+
+        public GAConfig getConfig() {
+            return config;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public int getGenerations() {
+            return generations;
+        }
+
+        @Override
+        public String toString() {
+            return score + " after " + generations + " generations with " + config;
+        }
+    }
+
+    private final Dataset data;
+    private final int threads;
+    private final Random random;
+    private long trials = 0;
+
+    public HyperparameterSearch(Dataset data, int threads, long seed) {
+        this.data = data;
+        this.threads = threads;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: HyperparameterSearch <dataset> [max generations] [min generations] [threads] [seed]");
+            return;
+        }
+        Dataset data = Dataset.load(args[0]);
+        int maxGenerations = args.length > 1 ? Integer.parseInt(args[1]) : 81;
+        int minGenerations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        Trial best = new HyperparameterSearch(data, threads, seed).hyperband(maxGenerations, minGenerations);
+        System.out.println("Best settings: " + best.getConfig());
+        System.out.println("Best fitness: " + best.getScore() + " after " + best.getGenerations() + " generations");
+    }
+
+    /* Public methods */
+
+    /**
+     * Run Hyperband.
+     * @param maxGenerations The most generations any trial gets.
+     * @param minGenerations The fewest generations any trial gets before it can be dropped.
+     * @return The best trial of all brackets.
+     */
+    public Trial hyperband(int maxGenerations, int minGenerations) throws Exception {
+        int brackets = 0;
+        for (long r = minGenerations; r * ETA <= maxGenerations; r *= ETA) {
+            brackets++;
+        }
+        Trial best = null;
+        for (int s = brackets; s >= 0; s--) {
+            int count = (int) Math.ceil((double) (brackets + 1) / (s + 1) * Math.pow(ETA, s));
+            int generations = (int) Math.max(1, maxGenerations / Math.pow(ETA, s));
+            List<GAConfig> configs = new ArrayList<GAConfig>();
+            for (int i = 0; i < count; i++) {
+                configs.add(sample());
+            }
+            System.out.println("INFO: Bracket " + s + ": " + count + " settings starting with " + generations + " generations");
+            Trial winner = successiveHalving(configs, generations, s);
+            if (best == null || winner.getScore() > best.getScore()) {
+                best = winner;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Run one bracket of successive halving.
+     * @param configs The settings to try.
+     * @param generations The generations every setting gets in the first rung.
+     * @param rungs The number of times the trials are cut down to the best 1 / ETA.
+     * @return The best trial of the last rung.
+     */
+    public Trial successiveHalving(List<GAConfig> configs, int generations, int rungs) throws Exception {
+        List<Trial> rung = new ArrayList<Trial>();
+        for (GAConfig config : configs) {
+            rung.add(new Trial(config, random.nextLong()));
+            trials++;
+        }
+        for (int i = 0; ; i++) {
+            advanceAll(rung, generations);
+            Collections.sort(rung, BY_SCORE);
+            System.out.println("INFO:   " + rung.size() + " trials at " + generations + " generations, best " + rung.get(0));
+            if (i == rungs || rung.size() == 1) break;
+            rung = new ArrayList<Trial>(rung.subList(0, Math.max(1, rung.size() / ETA)));
+            generations *= ETA;
+        }
+        return rung.get(0);
+    }
+
+    // Number of settings tried so far
+    public long getTrials() {
+        return trials;
+    }
+
+    /* Helpers */
+
+    // Best score first
+    private static final Comparator<Trial> BY_SCORE = new Comparator<Trial>() {
+        @Override
+        public int compare(Trial t1, Trial t2) {
+            return Double.compare(t2.score, t1.score);
+        }
+    };
+
+    // Advances every trial to the given number of generations, several at a time
+    private void advanceAll(List<Trial> rung, final int generations) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, rung.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Trial trial : rung) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        trial.advance(data, generations);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Picks settings at random
+    private GAConfig sample() {
+        return new GAConfig(POPULATION_SIZES[random.nextInt(POPULATION_SIZES.length)],
+                UNIFORM_RATES[random.nextInt(UNIFORM_RATES.length)],
+                MUTATION_RATES[random.nextInt(MUTATION_RATES.length)],
+                TOURNAMENT_SIZES[random.nextInt(TOURNAMENT_SIZES.length)],
+                random.nextBoolean(), true);
+    }
+}
@@ -15,28 +15,50 @@ public class Individual {
     // The default length for the genes array
     static int defaultGeneLength = 15;
     // Array to store the genes of the individual
-    public int[] genes = new int[defaultGeneLength];
-    // Cache for the fitness value to avoid repeated calculations
-    private double fitness = 0.0;
+    public int[] genes;
+    // Cache for the fitness value to avoid repeated calculations. Volatile, as individuals of a
+    // steady-state population are read by other threads than the one evaluating them
+    private volatile double fitness = 0.0;
+    // Calculator used to score this individual
+    FitnessCalc fitnessCalc = FitnessCalc.MODEL;
+    // Cache for the canonical form of the encoded expression and its cost, published together
+    private volatile Form form = null;
+    // Set once LocalSearch found no fitter neighbour, so it is not searched again
+    boolean localOptimum = false;
     // Elements representing operands in a symbolic expression
     String[] elementsA = new String[] {"a", "b", "c", "d", "1", "0", "0.333", "0.666"};  
     // Elements representing operators in a symbolic expression
     String[] elementsB = new String[] {"+", "-", "*", "/", "m", "n", "p"};
+
+    // Creates an individual with genes of the default length
+    public Individual() {
+        this(defaultGeneLength);
+    }
+
+    // Creates an individual with genes of the given length
+    public Individual(int length) {
+        if (!Model.isValidGenomeLength(length))
+            throw new IllegalArgumentException("Gene length must be odd and at least 3: " + length);
+        genes = new int[length];
+    }
     
     // Initializes an individual with random genes
     public void generateIndividual() {
-        genes = new int[defaultGeneLength];
-        Random randomGenerator = new Random();
-        for (int i = 0; i < defaultGeneLength; i++) {
+        form = null;
+        localOptimum = false;
+        Random randomGenerator = Algorithm.random();
+        for (int i = 0; i < genes.length; i++) {
             int gene = randomGenerator.nextInt(7); // Randomly pick an index for elementsB
             genes[i] = gene;
         }
     }
     
-    // Initializes an individual with predefined genes
+    // Initializes an individual with predefined genes, taking over their length
     public void generateIndividual(int[] predefinedGenes) {
-        if (predefinedGenes != null && predefinedGenes.length == defaultGeneLength) {
-            System.arraycopy(predefinedGenes, 0, genes, 0, defaultGeneLength);
+        if (predefinedGenes != null && Model.isValidGenomeLength(predefinedGenes.length)) {
+            genes = predefinedGenes.clone();
+            form = null;
+            localOptimum = false;
         } else {
             // Fallback to random gene generation if input is invalid
             generateIndividual();
@@ -50,10 +72,20 @@ public class Individual {
         return newIndividual;
     }
 
+    // Factory method to create an Individual with predefined genes, scored by the given calculator
+    public static Individual createWithGenes(int[] predefinedGenes, FitnessCalc fitnessCalc) {
+        Individual newIndividual = createWithGenes(predefinedGenes);
+        newIndividual.fitnessCalc = fitnessCalc;
+        return newIndividual;
+    }
+
     /* Getters and setters */
 
-    // Sets a new default gene length. Useful for experiments with different gene lengths
+    // Sets a new default gene length for the individuals created from now on. Useful for
+    // experiments with longer genomes, e.g. 31, 63 or 127 genes
     public static void setDefaultGeneLength(int length) {
+        if (!Model.isValidGenomeLength(length))
+            throw new IllegalArgumentException("Gene length must be odd and at least 3: " + length);
         defaultGeneLength = length;
     }
     
@@ -66,6 +98,8 @@ public class Individual {
     public void setGene(int index, int value) {
         genes[index] = value;
         fitness = 0; // Fitness needs to be recalculated
+        form = null;
+        localOptimum = false;
     }
 
     /* Public methods */
@@ -83,6 +117,42 @@ public class Individual {
         return fitness;
     }
 
+    // Whether the fitness has been calculated
+    boolean hasFitness() {
+        return fitness != 0;
+    }
+
+    // Sets a fitness calculated elsewhere, e.g. together with the rest of a generation
+    void setFitness(double fitness) {
+        this.fitness = fitness;
+    }
+
+    // Gets the canonical form of the encoded expression, shared by all algebraically equivalent
+    // individuals. Returns null if the genes do not form a valid expression
+    public String getCanonicalForm() {
+        return form().canonicalForm;
+    }
+
+    // Gets the cost of evaluating the individual: the number of instructions of its compiled program
+    public int getCost() {
+        return form().cost;
+    }
+
+    // Computes the canonical form and cost if not computed before
+    private Form form() {
+        Form form = this.form;
+        if (form == null) {
+            try {
+                CompiledGenome genome = CompiledGenome.compile(genes);
+                form = new Form(genome.toString(), genome.size());
+            } catch (RuntimeException e) {
+                form = new Form(null, genes.length); // More than any valid genome of this length compiles to
+            }
+            this.form = form;
+        }
+        return form;
+    }
+
     // Converts the individual's gene array to a string representation
     @Override
     public String toString() {
@@ -95,9 +165,9 @@ public class Individual {
     
     // Converts the individual's genes to a symbolic expression, mixing elementsA and elementsB
     public String vectorize() {
-        String[] geneString = new String[defaultGeneLength];
+        String[] geneString = new String[genes.length];
         StringBuilder result = new StringBuilder("0mc-b-dma-0.333n1p0"); // Starting point for the expression
-        for (int i = 0; i < defaultGeneLength; i++) {
+        for (int i = 0; i < genes.length; i++) {
             int num = genes[i];
             // Alternate between elementsA and elementsB based on index
             geneString[i] = (i % 2 == 0) ? elementsA[num] : elementsB[num];
@@ -110,4 +180,15 @@ public class Individual {
     public int[] vectorizeNumeric() {
         return genes.clone(); // Returns a copy of the genes array
     }
-}
\ No newline at end of file
+
+    // Canonical form, null if the genes do not form a valid expression, and the cost that goes with it
+    private static final class Form {
+        final String canonicalForm;
+        final int cost;
+
+        Form(String canonicalForm, int cost) {
+            this.canonicalForm = canonicalForm;
+            this.cost = cost;
+        }
+    }
+}
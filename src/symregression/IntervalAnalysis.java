@@ -0,0 +1,225 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.Expression;
+
+/**
+ * Static analysis of a compiled expression over the range of the base measure scores.
+ *
+ * Every node gets a conservative interval of the values it can take and a bound on the size,
+ * in bits, of the numerator and denominator of its BigRational value. From these the analysis
+ * flags the ways evaluation can go wrong before any row is evaluated. Expressions without risks
+ * can be evaluated directly; the others go through a guarded evaluation that refuses powers
+ * whose result would exceed MAX_POW_BITS. Expressions that fail on every row get DEFAULT.
+ */
+public class IntervalAnalysis {
+
+    // Largest numerator or denominator, in bits, that a power may produce in guarded evaluation
+    static final int MAX_POW_BITS = 1 << 16;
+    // Bound on the size of a base measure score read from its decimal text (at most 17 digits)
+    private static final int VARIABLE_BITS = 64;
+
+    // Ways in which evaluating an expression can go wrong
+    public enum Risk {
+        DIVISION_BY_ZERO,    // a divisor can be zero
+        NEGATIVE_EXPONENT,   // an exponent can be negative, which BigRational.pow rejects
+        EXPONENT_BLOWUP,     // a power can produce more than MAX_POW_BITS bits
+        OVERFLOW,            // a value can exceed the range of a double
+        INVALID_OPERAND      // a glued operand may not be a valid number
+    }
+
+    private final EnumSet<Risk> risks = EnumSet.noneOf(Risk.class);
+    // Set when some node fails whatever the row
+    private boolean alwaysFails = false;
+    private final double lower;
+    private final double upper;
+
+    private IntervalAnalysis(double lower, double upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * Analyse an expression.
+     * @param expression The expression to analyse, usually already reduced by the Optimizer.
+     * @param lower The smallest value of any variable.
+     * @param upper The largest value of any variable.
+     * @return The result of the analysis.
+     */
+    public static IntervalAnalysis analyze(Expression expression, double lower, double upper) {
+        IntervalAnalysis analysis = new IntervalAnalysis(lower, upper);
+        analysis.visit(expression);
+        return analysis;
+    }
+
+    /* Getters */
+
+    // Whether the expression can be evaluated without any guard
+    public boolean isSafe() {
+        return risks.isEmpty() && !alwaysFails;
+    }
+
+    // Whether every row is known to fail, so the expression evaluates to DEFAULT everywhere
+    public boolean alwaysFails() {
+        return alwaysFails;
+    }
+
+    public Set<Risk> getRisks() {
+        return Collections.unmodifiableSet(risks);
+    }
+
+    /* Public methods */
+
+    // Throws an ArithmeticException if raising base to the exponent would produce a numerator
+    // or denominator of more than MAX_POW_BITS bits
+    public static void checkPower(BigRational base, int exponent) {
+        long bits = base.bitLength();
+        if (bits > 1 && Math.abs((long) exponent) * bits > MAX_POW_BITS) {
+            throw new ArithmeticException("Power too large: " + bits + " bits to the " + exponent);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return alwaysFails ? "always fails" : isSafe() ? "safe" : "risks " + risks;
+    }
+
+    /* Helpers */
+
+    // Returns {lowest value, highest value, size bound in bits} of a node
+    private double[] visit(Expression expression) {
+        if (expression instanceof Model.Number) {
+            BigRational value = expression.eval();
+            double v = value.doubleValue();
+            return new double[] {v, v, value.bitLength()};
+        }
+        if (expression instanceof Model.Variable) {
+            return new double[] {lower, upper, VARIABLE_BITS};
+        }
+        if (!(expression instanceof BinaryExpression)) {
+            // Glued operands: digits of the parts written one after the other
+            risks.add(Risk.INVALID_OPERAND);
+            return new double[] {lower >= 0 ? 0 : Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 3 * VARIABLE_BITS};
+        }
+
+        BinaryExpression binary = (BinaryExpression) expression;
+        double[] l = visit(binary.leftOperand);
+        double[] r = visit(binary.rightOperand);
+        double[] result;
+        switch (binary.operator) {
+            case ADD:
+                result = interval(l[0] + r[0], l[1] + r[1], Math.max(l[2], r[2]) * 2 + 1);
+                break;
+            case SUB:
+                result = interval(l[0] - r[1], l[1] - r[0], Math.max(l[2], r[2]) * 2 + 1);
+                break;
+            case MUL:
+                result = product(l, r, l[2] + r[2]);
+                break;
+            case DIV:
+                if (r[0] == 0 && r[1] == 0) {
+                    alwaysFails = true;
+                }
+                if (r[0] <= 0 && r[1] >= 0) {
+                    risks.add(Risk.DIVISION_BY_ZERO);
+                    result = interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, l[2] + r[2]);
+                } else {
+                    result = product(l, new double[] {1 / r[1], 1 / r[0]}, l[2] + r[2]);
+                }
+                break;
+            case MAX:
+                result = interval(Math.max(l[0], r[0]), Math.max(l[1], r[1]), Math.max(l[2], r[2]));
+                break;
+            case MIN:
+                result = interval(Math.min(l[0], r[0]), Math.min(l[1], r[1]), Math.max(l[2], r[2]));
+                break;
+            case POW:
+                result = power(l, r);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected operator: " + binary.operator);
+        }
+
+        if (result[0] < -Double.MAX_VALUE || result[1] > Double.MAX_VALUE) {
+            risks.add(Risk.OVERFLOW);
+        }
+        return result;
+    }
+
+    private double[] power(double[] base, double[] exponent) {
+        // BigRational.pow takes the exponent truncated towards zero
+        double low = truncate(exponent[0]);
+        double high = truncate(exponent[1]);
+        if (exponent[1] <= -1 - 1e-9) {
+            alwaysFails = true; // Every exponent is negative
+        }
+        if (low < 0) {
+            risks.add(Risk.NEGATIVE_EXPONENT);
+            low = 0;
+        }
+        if (high > Integer.MAX_VALUE) {
+            // Beyond the range of intValue the exponent is unpredictable
+            risks.add(Risk.EXPONENT_BLOWUP);
+            return interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        high = Math.max(high, 0);
+
+        double bits = base[2] * high;
+        if (base[2] > 1 && bits > MAX_POW_BITS) {
+            risks.add(Risk.EXPONENT_BLOWUP);
+            // A base of magnitude m >= 2 has a numerator of at least floor(log2(m)) + 1 bits
+            double smallest = base[0] > 0 ? base[0] : base[1] < 0 ? -base[1] : 0;
+            if (smallest >= 2 && (Math.floor(Math.log(smallest) / Math.log(2)) + 1) * low > MAX_POW_BITS) {
+                alwaysFails = true; // Guarded evaluation rejects every row
+            }
+        }
+
+        if (high == 0) {
+            return interval(1, 1, 1);
+        }
+        double magnitude = Math.max(Math.abs(base[0]), Math.abs(base[1]));
+        double top = Math.pow(Math.max(magnitude, 1), high);
+        if (base[0] >= 0) {
+            double bottom = base[0] >= 1 ? Math.pow(base[0], low) : 0;
+            return interval(bottom, top, bits);
+        }
+        return interval(-top, top, bits);
+    }
+
+    private static double[] product(double[] l, double[] r, double bits) {
+        double[] candidates = {l[0] * r[0], l[0] * r[1], l[1] * r[0], l[1] * r[1]};
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double candidate : candidates) {
+            if (Double.isNaN(candidate)) {
+                // Zero times infinity: the product is unbounded
+                return interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, bits);
+            }
+            min = Math.min(min, candidate);
+            max = Math.max(max, candidate);
+        }
+        return interval(min, max, bits);
+    }
+
+    private static double[] interval(double low, double high, double bits) {
+        if (Double.isNaN(low)) low = Double.NEGATIVE_INFINITY;
+        if (Double.isNaN(high)) high = Double.POSITIVE_INFINITY;
+        return new double[] {low, high, bits};
+    }
+
+    private static double truncate(double value) {
+        return value < 0 ? Math.ceil(value) : Math.floor(value);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Memetic stage of the GA: first-improvement hill climbing over the single-gene neighbours of an
+ * individual, enabled with the localSearchSteps setting and applied to the elite each generation.
+ *
+ * A genome of 15 genes has about a hundred such neighbours: every operator gene can take 6 other
+ * operators and every operand gene 7 other operands. Each step visits them in random order and
+ * moves to the first one that is fitter. Neighbours equivalent to the individual or to each other
+ * are skipped. The neighbours are scored together, a batch of them at a time, whatever the
+ * calculator: they differ from the current individual in one leaf or operator, so calculators
+ * with sharing enabled compute their common subexpressions once, and the others score a batch in
+ * one pass over the data. The search stops at the first batch with a fitter neighbour, so it
+ * does not pay for the whole neighbourhood when an improvement comes early. With setThreads,
+ * each thread scores a batch at a time.
+ * Individuals found to be local optima are marked, so an elite that survives several
+ * generations is only searched once.
+ */
+public class LocalSearch {
+
+    // Number of neighbours scored together by each thread before looking for a fitter one
+    static final int BATCH_SIZE = 4;
+
+    // Threads scoring the neighbours that are not shared, or null for the calling thread
+    private static volatile ExecutorService executor = null;
+    private static volatile int threads = 1;
+
+    /* Public methods */
+
+    // Scores neighbours on the given number of threads. One scores them on the calling thread.
+    // Call with one when done to release the threads
+    public static synchronized void setThreads(int count) {
+        ExecutorService previous = executor;
+        executor = count > 1 ? Executors.newFixedThreadPool(count) : null;
+        threads = Math.max(count, 1);
+        if (previous != null) previous.shutdown();
+    }
+
+    /**
+     * Improve an individual by first-improvement hill climbing.
+     * @param start The individual to start from. Its genes are not modified, but it is marked as a
+     * local optimum when none of its neighbours is fitter, so that an elite kept over several
+     * generations is not searched again.
+     * @param maxSteps The maximum number of moves.
+     * @return The fittest individual reached, or start itself if none of its neighbours is fitter.
+     */
+    public static Individual climb(Individual start, int maxSteps) throws Exception {
+        Individual current = start;
+        for (int step = 0; step < maxSteps && !current.localOptimum; step++) {
+            Individual next = firstImprovement(current);
+            if (next == null) {
+                current.localOptimum = true;
+            } else {
+                current = next;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Find a fitter single-gene neighbour of an individual.
+     * @param current The individual.
+     * @return The first fitter neighbour in a random order, or null if there is none.
+     */
+    public static Individual firstImprovement(Individual current) throws Exception {
+        double fitness = current.getFitness();
+        List<Individual> neighbours = neighbours(current);
+        Collections.shuffle(neighbours, Algorithm.random());
+        int batch = BATCH_SIZE * (LocalSearch.executor == null ? 1 : threads);
+        for (int from = 0; from < neighbours.size(); from += batch) {
+            List<Individual> group = neighbours.subList(from, Math.min(from + batch, neighbours.size()));
+            // Neighbours left without fitness, e.g. with invalid genes, are scored on their own below
+            score(group, current.fitnessCalc);
+            for (Individual neighbour : group) {
+                if (neighbour.getFitness() > fitness) return neighbour;
+            }
+        }
+        return null;
+    }
+
+    /* Helpers */
+
+    // The valid single-gene neighbours of an individual, one per distinct function other than its own
+    static List<Individual> neighbours(Individual indiv) {
+        int[] genes = indiv.vectorizeNumeric();
+        // The last operand is glued from the three last genes, which are all operands
+        int last = genes.length - 3;
+        Set<String> seen = new HashSet<String>();
+        seen.add(indiv.getCanonicalForm());
+        List<Individual> neighbours = new ArrayList<Individual>();
+        for (int i = 0; i < genes.length; i++) {
+            boolean operator = i % 2 == 1 && i < last;
+            int symbols = operator ? Model.elementsB.length : Model.symbolsA.length;
+            int original = genes[i];
+            for (int gene = 0; gene < symbols; gene++) {
+                if (gene == original) continue;
+                genes[i] = gene;
+                Individual neighbour = Individual.createWithGenes(genes, indiv.fitnessCalc);
+                String canonicalForm = neighbour.getCanonicalForm();
+                // Invalid genes are kept, as the calculator gives them a fitness too
+                if (canonicalForm == null || seen.add(canonicalForm)) {
+                    neighbours.add(neighbour);
+                }
+            }
+            genes[i] = original;
+        }
+        return neighbours;
+    }
+
+    // Scores the neighbours together, split into one part per thread if there is an executor
+    private static void score(List<Individual> neighbours, final FitnessCalc calc) throws Exception {
+        ExecutorService executor = LocalSearch.executor;
+        int parts = executor == null ? 1 : Math.min(threads, (neighbours.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+        if (parts <= 1) {
+            calc.evaluateTogether(neighbours);
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int p = 0; p < parts; p++) {
+            final List<Individual> part = neighbours.subList(p * neighbours.size() / parts, (p + 1) * neighbours.size() / parts);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    calc.evaluateTogether(part);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+    }
+}
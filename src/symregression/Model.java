@@ -16,9 +16,9 @@ import java.util.Stack;
 
 public class Model {
     
-    // Lists to hold training and validation data
-    private static ArrayList<Double[]> data_training;
-    private static ArrayList<Double[]> data_validation;
+    // Training and validation data, used for evaluation
+    private static Dataset dataset_training = null;
+    private static Dataset dataset_validation = null;
     
     // Arrays to hold source data for training and validation
     static double[] source_validation = null;
@@ -30,22 +30,29 @@ public class Model {
     
     // Symbolic representation of variables and constants
     static String[] elementsA = new String[] {"a", "b", "c", "d", "1", "0", "0.333", "0.666"}; 
+    // Names of the variables and constants. Unlike elementsA these are never replaced by row values
+    static final String[] symbolsA = new String[] {"a", "b", "c", "d", "1", "0", "0.333", "0.666"};
     // Symbolic representation of operations
     static String[] elementsB = new String[] {"+", "-", "*", "/", "m", "n", "p"};
     
     // Default value for expressions that cannot be evaluated
     static double DEFAULT = 0.5d;
     
-    // Best fitness values achieved during training and validation
-    private static double bestTrainingValue = Double.NEGATIVE_INFINITY;
-    private static double bestValidationValue = Double.NEGATIVE_INFINITY;
-    // Solutions yielding the best fitness values during training and validation
-    private static int[] bestTrainingSolution = null;
-    private static int[] bestValidationSolution = null;
+    // Number of solutions kept in each hall of fame
+    static final int HALL_OF_FAME_SIZE = 10;
+    // Best distinct solutions found during training and validation, with their fitness values.
+    // Safe to update from several evaluating threads at once
+    private static final HallOfFame trainingHallOfFame = new HallOfFame(HALL_OF_FAME_SIZE);
+    private static final HallOfFame validationHallOfFame = new HallOfFame(HALL_OF_FAME_SIZE);
 
     // Interface for expressions, allowing evaluation to a BigRational result
     public interface Expression {
         BigRational eval();
+
+        // Evaluate with the variables a, b, c and d bound to the base measure scores of a row
+        default BigRational eval(double[] row) {
+            return eval();
+        }
     }
 
     // Enum for handling parentheses, specifically for left parentheses
@@ -124,6 +131,11 @@ public class Model {
         public BigRational eval() {
             return operator.eval(leftOperand.eval(), rightOperand.eval());
         }
+
+        @Override
+        public BigRational eval(double[] row) {
+            return operator.eval(leftOperand.eval(row), rightOperand.eval(row));
+        }
  
         @Override
         public String toString() {
@@ -131,6 +143,78 @@ public class Model {
         }
     }
  
+    // Represents one of the variables a, b, c and d
+    public static class Variable implements Expression {
+        public final int index;
+
+        public Variable(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public BigRational eval() {
+            throw new IllegalStateException("Variable " + symbolsA[index] + " needs a row to be evaluated");
+        }
+
+        @Override
+        public BigRational eval(double[] row) {
+            return BigRational.valueOf(String.valueOf(row[index]));
+        }
+
+        @Override
+        public String toString() {
+            return symbolsA[index];
+        }
+    }
+
+    // Represents the last operand of a genome. Its genes are written next to each other in the
+    // expression string, so they are read as one number, e.g. "a", "1" and "0" give "0.9710"
+    // for a = 0.97. Depending on the row the text may not be a valid number, which fails the row.
+    public static class Template implements Expression {
+        public final int[] parts;
+
+        public Template(int[] parts) {
+            this.parts = parts.clone();
+        }
+
+        @Override
+        public BigRational eval() {
+            return BigRational.valueOf(text(null));
+        }
+
+        @Override
+        public BigRational eval(double[] row) {
+            return BigRational.valueOf(text(row));
+        }
+
+        // Whether any of the parts is a variable
+        public boolean isVariable() {
+            for (int part : parts) {
+                if (part < 4) return true;
+            }
+            return false;
+        }
+
+        private String text(double[] row) {
+            StringBuilder text = new StringBuilder();
+            for (int part : parts) {
+                if (part < 4 && row == null)
+                    throw new IllegalStateException("Variable " + symbolsA[part] + " needs a row to be evaluated");
+                text.append(part < 4 ? String.valueOf(row[part]) : symbolsA[part]);
+            }
+            return text.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("{");
+            for (int part : parts) {
+                text.append(symbolsA[part]);
+            }
+            return text.append('}').toString();
+        }
+    }
+
     // Helper method to handle the creation of new operands during parsing
     private static void createNewOperand(BinaryOperator operator, Stack<Expression> operands) {
         Expression rightOperand = operands.pop();
@@ -203,7 +287,84 @@ public class Model {
         return expression;
     }
 
-    
+    /**
+     * Parse the genes of a solution into an expression over the variables a, b, c and d.
+     * The tree has the same shape and operator precedence as the expression string that
+     * calculateTraining builds for every row, but it is built once and evaluated with eval(row).
+     * @param sol The genes of the solution.
+     * @return The expression encoded by the genes.
+     */
+    public static Expression parseGenome(int[] sol) {
+        if (!isValidGenomeLength(sol.length))
+            throw new IllegalArgumentException("Invalid genome length " + sol.length);
+        Stack<Expression> operands = new Stack<>();
+        Stack<BinaryOperator> operators = new Stack<>();
+        // The last operand is glued to the two genes after it
+        int last = sol.length - 3;
+
+        for (int i = 0; i <= last; i++) {
+            if (i % 2 == 1) {
+                if (sol[i] < 0 || sol[i] >= elementsB.length)
+                    throw new IllegalArgumentException("Invalid operator gene " + sol[i] + " at position " + i);
+                BinaryOperator operator = BinaryOperator.forSymbol(elementsB[sol[i]].charAt(0));
+                while (!operators.isEmpty() && operators.peek().precedence >= operator.precedence)
+                    createNewOperand(operators.pop(), operands);
+                operators.push(operator);
+            } else if (i < last) {
+                operands.push(genomeOperand(sol[i]));
+            } else {
+                operands.push(genomeTail(new int[] {sol[i], sol[i + 1], sol[i + 2]}));
+            }
+        }
+
+        while (!operators.isEmpty())
+            createNewOperand(operators.pop(), operands);
+        return operands.pop();
+    }
+
+    // Whether genomes of the given length encode an expression. Operand and operator genes alternate
+    // and the last operand is glued from three genes, so the length must be odd and at least 3
+    public static boolean isValidGenomeLength(int length) {
+        return length >= 3 && length % 2 == 1;
+    }
+
+    // Parses a comma separated list of genes, optionally enclosed in brackets, as written by
+    // FitnessCalc.toString and in genome files
+    static int[] parseGenes(String text) {
+        String[] fields = text.replace("[", "").replace("]", "").split(",");
+        if (!isValidGenomeLength(fields.length)) {
+            throw new IllegalArgumentException("Expected an odd number of at least 3 genes: " + text);
+        }
+        int[] sol = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            sol[i] = Integer.parseInt(fields[i].trim());
+        }
+        return sol;
+    }
+
+    // Creates the leaf for a single operand gene
+    private static Expression genomeOperand(int gene) {
+        if (gene < 0 || gene >= symbolsA.length)
+            throw new IllegalArgumentException("Invalid operand gene " + gene);
+        if (gene < 4) return new Variable(gene);
+        return new Number(BigRational.valueOf(symbolsA[gene]));
+    }
+
+    // Creates the leaf for the glued last operand, reading it as a number right away when it holds no variable
+    private static Expression genomeTail(int[] parts) {
+        for (int part : parts) {
+            if (part < 0 || part >= symbolsA.length)
+                throw new IllegalArgumentException("Invalid operand gene " + part);
+        }
+        Template template = new Template(parts);
+        if (template.isVariable()) return template;
+        try {
+            return new Number(template.eval());
+        } catch (NumberFormatException e) {
+            return template; // Never a valid number; every row fails as in the string version
+        }
+    }
+
     /** 
      * Compute the Pearson Correlation Coefficient between two data sets.
      * @param scores1 The first data set.
@@ -239,14 +400,84 @@ public class Model {
         return result;
     }
 
+    /**
+     * The Pearson Correlation Coefficient of getPearson, computed one pair of scores at a time so
+     * that the scores need not be kept in arrays. Gives exactly the result of getPearson on the
+     * same scores in the same order. Accumulators of consecutive parts of the scores can be merged,
+     * e.g. after accumulating them on different threads.
+     */
+    static class PearsonAccumulator {
+        private int count = 0;
+        private double sum_sq_x = 0;
+        private double sum_sq_y = 0;
+        private double sum_coproduct = 0;
+        private double mean_x = 0;
+        private double mean_y = 0;
+
+        void add(double x, double y) {
+            count++;
+            if (count == 1) {
+                mean_x = x;
+                mean_y = y;
+                return;
+            }
+            double sweep = (double) (count - 1) / count;
+            double delta_x = x - mean_x;
+            double delta_y = y - mean_y;
+            sum_sq_x += delta_x * delta_x * sweep;
+            sum_sq_y += delta_y * delta_y * sweep;
+            sum_coproduct += delta_x * delta_y * sweep;
+            mean_x += delta_x / count;
+            mean_y += delta_y / count;
+        }
+
+        // Adds the pairs accumulated by other, as if they were added after the pairs of this
+        // accumulator (Chan et al.). Stable, but not always equal to the last bit to adding them one by one
+        void merge(PearsonAccumulator other) {
+            if (other.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = other.count;
+                sum_sq_x = other.sum_sq_x;
+                sum_sq_y = other.sum_sq_y;
+                sum_coproduct = other.sum_coproduct;
+                mean_x = other.mean_x;
+                mean_y = other.mean_y;
+                return;
+            }
+            double total = (double) count + other.count;
+            double weight = count * (other.count / total);
+            double delta_x = other.mean_x - mean_x;
+            double delta_y = other.mean_y - mean_y;
+            sum_sq_x += other.sum_sq_x + delta_x * delta_x * weight;
+            sum_sq_y += other.sum_sq_y + delta_y * delta_y * weight;
+            sum_coproduct += other.sum_coproduct + delta_x * delta_y * weight;
+            mean_x += delta_x * (other.count / total);
+            mean_y += delta_y * (other.count / total);
+            count += other.count;
+        }
+
+        double result() {
+            double pop_sd_x = Math.sqrt(sum_sq_x / count);
+            double pop_sd_y = Math.sqrt(sum_sq_y / count);
+            double cov_x_y = sum_coproduct / count;
+            double result = cov_x_y / (pop_sd_x * pop_sd_y);
+
+            if (Double.isNaN(result) || Double.isInfinite(result)) result = 0;
+
+            return result;
+        }
+    }
+
 
     /**
      * Load validation data from a file.
      * @param filename The path to the file containing validation data.
      */
     public static void load_validation(final String filename) { 
+        ArrayList<Double[]> data_validation = new ArrayList<Double[]>();
         try {
-            data_validation = new ArrayList<Double[]>();
             FileInputStream stream = new FileInputStream(filename);
             BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
             String dat;
@@ -271,11 +502,16 @@ public class Model {
             e.printStackTrace();
         } 
 
-        int dim = data_validation.size();
-        source_validation = new double[dim];
-        for (int a = 0; a < dim; a++) {
-            source_validation[a] = data_validation.get(a)[0];
-        }
+        useValidation(toDataset(filename, data_validation));
+    }
+
+    /**
+     * Use an already loaded dataset as validation data, e.g. one mapped from a binary file.
+     * @param data The dataset.
+     */
+    public static void load_validation(Dataset data) {
+        useValidation(data);
+        System.out.println("INFO: Validation data loaded from: " + data.getName());
     }
 
 	
@@ -284,8 +520,8 @@ public class Model {
      * @param filename The path to the file containing training data.
      */
     public static void load_training(final String filename) { 
+        ArrayList<Double[]> data_training = new ArrayList<Double[]>();
         try {
-            data_training = new ArrayList<Double[]>();
             FileInputStream stream = new FileInputStream(filename);
             BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
             String dat;
@@ -310,11 +546,41 @@ public class Model {
             e.printStackTrace();
         }
 
-        int dim = data_training.size();
-        source_training = new double[dim];
-        for (int a = 0; a < dim; a++) {
-            source_training[a] = data_training.get(a)[0];
+        useTraining(toDataset(filename, data_training));
+    }
+
+    /**
+     * Use an already loaded dataset as training data, e.g. one mapped from a binary file.
+     * @param data The dataset.
+     */
+    public static void load_training(Dataset data) {
+        useTraining(data);
+        System.out.println("INFO: Training data loaded from: " + data.getName());
+    }
+
+    private static void useTraining(Dataset data) {
+        source_training = data.getSource().clone();
+        dataset_training = data;
+        FitnessCalc.MODEL.clearCache(); // Cached fitness values belong to the previous data
+    }
+
+    private static void useValidation(Dataset data) {
+        source_validation = data.getSource().clone();
+        dataset_validation = data;
+    }
+
+    // Copies loaded rows into a dataset, with the human judgement as source and the base measure
+    // scores a, b, c and d as variables
+    private static Dataset toDataset(String filename, ArrayList<Double[]> data) {
+        double[] source = new double[data.size()];
+        double[][] rows = new double[data.size()][Dataset.FEATURES];
+        for (int a = 0; a < data.size(); a++) {
+            source[a] = data.get(a)[0];
+            for (int i = 0; i < Dataset.FEATURES; i++) {
+                rows[a][i] = data.get(a)[i + 1];
+            }
         }
+        return Dataset.of(filename, source, rows);
     }
 
  
@@ -389,10 +655,64 @@ public class Model {
 	    		return 2;
 	    	
 	    	return 3;
-	    	
+
 	    }
-	    
-	    
+
+
+    /**
+     * Evaluate a solution on a single row of base measure scores.
+     * This does not touch any shared state, so it can be called from several threads at once.
+     * @param sol The genes of the solution.
+     * @param row The base measure scores bound to the variables a, b, c and d.
+     * @return The value of the expression, or DEFAULT if it cannot be evaluated.
+     */
+    public static double evaluate(int[] sol, double[] row) {
+        return CompiledGenome.compile(sol).evaluate(row);
+    }
+
+    /**
+     * Evaluate an expression built by parseGenome on a single row of base measure scores.
+     * @param expression The expression to evaluate.
+     * @param row The base measure scores bound to the variables a, b, c and d.
+     * @return The value of the expression, or DEFAULT if it cannot be evaluated.
+     */
+    public static double evaluate(Expression expression, double[] row) {
+        double value;
+        try {
+            value = expression.eval(row).doubleValue();
+        } catch (Exception e) {
+            value = DEFAULT;
+        }
+
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            value = DEFAULT;
+
+        return value;
+    }
+
+    /**
+     * Calculate the Pearson correlation of a solution on a dataset.
+     * Works only on its arguments, so runs on different datasets can proceed concurrently.
+     * @param sol The genes of the solution.
+     * @param data The dataset to evaluate on.
+     * @return The Pearson correlation between the human judgements and the solution's scores.
+     */
+    public static double calculate(int[] sol, Dataset data) {
+        return calculate(sol, data, null);
+    }
+
+    /**
+     * Calculate the Pearson correlation of a solution on a dataset within an evaluation budget.
+     * @param sol The genes of the solution.
+     * @param data The dataset to evaluate on.
+     * @param budget The limits on the evaluation, or null for none.
+     * @return The Pearson correlation between the human judgements and the solution's scores.
+     * @throws EvaluationBudget.Exceeded If the evaluation goes over the budget.
+     */
+    public static double calculate(int[] sol, Dataset data, EvaluationBudget budget) {
+        return CompiledGenome.compile(sol, data).correlate(data, budget);
+    }
+
 
 
       
@@ -410,41 +730,12 @@ public class Model {
         	
         }*/
     	
-        target_validation = new double [data_validation.size()];  
-        Expression expression = null;
-                   
-        double fitness = 0;
-        String cadena = null;
+        target_validation = new double [dataset_validation.size()];  
 		        						
 		  try {
 		        							
-		        for (int a = 0; a < data_validation.size(); a++) {
-		        	elementsA[0] = String.valueOf(data_validation.get(a)[1]);
-		        	elementsA[1] = String.valueOf(data_validation.get(a)[2]);
-		        	elementsA[2] = String.valueOf(data_validation.get(a)[3]);
-		        	elementsA[3] = String.valueOf(data_validation.get(a)[4]);
-		        	//elementsA[4] = String.valueOf(data_validation.get(a)[5]);
-
-			        cadena = elementsA[sol[0]] + elementsB[sol[1]] + elementsA[sol[2]] + elementsB[sol[3]] + elementsA[sol[4]] + elementsB[sol[5]] + elementsA[sol[6]] + elementsB[sol[7]] + elementsA[sol[8]]+
-			        		elementsB[sol[9]] + elementsA[sol[10]] + elementsB[sol[11]] + elementsA[sol[12]] + elementsA[sol[13]] + elementsA[sol[14]];
-			        	
-			        
-			        try {
-			        	expression = parse(cadena);
-			        	fitness = Double.valueOf(expression.eval().doubleValue());
-			        } catch (Exception e) {
-			        	fitness = DEFAULT;
-			        }
-			        
-			        if (Double.valueOf(fitness).isNaN() || Double.valueOf(fitness).isInfinite())
-			        	fitness = DEFAULT;
-			        
-		        	
-		        	target_validation[a] =  Double.valueOf(fitness);
-		        	
-		        	//System.out.println (elementsA[0] + " " + elementsA[1] + " "+ elementsA[2] + " " + elementsA[3] + " "  + target_validation[a]);
-		        	
-		        }
+		        // Compile the solution once and evaluate the reduced expression on every row
+		        target_validation = CompiledGenome.compile(sol, dataset_validation).evaluate(dataset_validation);
 		        							
 		        							
 		  } catch (Exception e) {
@@ -452,7 +743,7 @@ public class Model {
 		  }
 		  
 		  
-		  for (int a = 0; a < data_validation.size(); a++) {
+		  for (int a = 0; a < dataset_validation.size(); a++) {
 			  
 		  }
 		  
@@ -463,12 +754,19 @@ public class Model {
     
     
     public static double calculateTraining (int[] sol) {
+    	return calculateTraining(sol, null);
+    }
+    
+    
+    // Same as calculateTraining(sol), but throws EvaluationBudget.Exceeded if the
+    // evaluation goes over the given budget
+    public static double calculateTraining (int[] sol, EvaluationBudget budget) {
     	
     	//
     	
     	//load_training ("C:\\temp\\mc-training.txt");
     	
-        for (int i = 0; i < 15; i++) {
+        for (int i = 0; i < sol.length; i++) {
         	
         	if (i % 2 == 0 && sol[i] > 8)
         		sol[i] = 0;
@@ -481,51 +779,26 @@ public class Model {
         //elementsA[7] = String.valueOf(sol[14]);
     	
  
-        target_training = new double [data_training.size()];
+        target_training = new double [dataset_training.size()];
         
-        double fitness = 0;
-        String cadena = null;
         double currentTrainingValue = 0;
 		        						
 		  try {
 		        							
-		        for (int a = 0; a < data_training.size(); a++) {
-		        	elementsA[0] = String.valueOf(data_training.get(a)[1]);
-		        	elementsA[1] = String.valueOf(data_training.get(a)[2]);
-		        	elementsA[2] = String.valueOf(data_training.get(a)[3]);
-		        	elementsA[3] = String.valueOf(data_training.get(a)[4]);
-		        	//elementsA[4] = String.valueOf(data_training.get(a)[5]);
-
-			        cadena = elementsA[sol[0]] + elementsB[sol[1]] + elementsA[sol[2]] + elementsB[sol[3]] + elementsA[sol[4]] + elementsB[sol[5]] + elementsA[sol[6]] + elementsB[sol[7]] + elementsA[sol[8]]+
-			        		elementsB[sol[9]] + elementsA[sol[10]] + elementsB[sol[11]] + elementsA[sol[12]] + elementsA[sol[13]] + elementsA[sol[14]];
-			        
-			        Expression expression = null;
-			        
-			        try {
-			        	expression = parse(cadena);
-			        	fitness = Double.valueOf(expression.eval().doubleValue());
-			        } catch (Exception e) {
-			        	fitness = DEFAULT;
-			        }
-			        
-			        if (Double.valueOf(fitness).isNaN() || Double.valueOf(fitness).isInfinite())
-			        	fitness = DEFAULT;
-			        
-		        	target_training[a] =  Double.valueOf(fitness);
-		        }
+		        // Compile the solution once and evaluate the reduced expression on every row
+		        target_training = CompiledGenome.compile(sol, dataset_training).evaluate(dataset_training, budget);
 		        							
 		       // number = Double.valueOf(getPearson(source_training, target_training));
 		       //number = Double.valueOf(getSpearman(source_training, target_training));
 		       // number = Double.valueOf(getValid(source_training, target_training));
 		       
 		        currentTrainingValue = Double.valueOf(getPearson(source_training, target_training));
-		        // Update bestTrainingValue if the current value is better
-		        if (currentTrainingValue > bestTrainingValue) {
-		            bestTrainingValue = currentTrainingValue;
-		            bestTrainingSolution = sol.clone(); // Cloning to avoid reference issues
-		        }
+		        // Offer the solution to the hall of fame, which keeps it if it is among the best
+		        trainingHallOfFame.offer(sol, currentTrainingValue);
 		        
 		        							
+		  } catch (EvaluationBudget.Exceeded e) {
+		       throw e;
 		  } catch (Exception e) {
 		       e.printStackTrace();
 		  }	
@@ -544,54 +817,24 @@ public class Model {
     	//load_validation ("C:\\temp\\mc-validation.txt");
     	//System.out.println (data_validation.size());
     	
-    	target_validation = new double [data_validation.size()];
+    	target_validation = new double [dataset_validation.size()];
     	
     	double currentValidationValue = 0;
-        double fitness = 0;
-        String cadena = null;
 		
         
         
 		  try {
 		        							
-		        for (int a = 0; a < data_validation.size(); a++) {
-		        	
-		        	elementsA[0] = String.valueOf(data_validation.get(a)[1]);
-		        	elementsA[1] = String.valueOf(data_validation.get(a)[2]);
-		        	elementsA[2] = String.valueOf(data_validation.get(a)[3]);
-		        	elementsA[3] = String.valueOf(data_validation.get(a)[4]);
-		        	//elementsA[4] = String.valueOf(data_validation.get(a)[5]);
-
-			        cadena = elementsA[sol[0]] + elementsB[sol[1]] + elementsA[sol[2]] + elementsB[sol[3]] + elementsA[sol[4]] + elementsB[sol[5]] + elementsA[sol[6]] + elementsB[sol[7]] + elementsA[sol[8]]+
-			        		elementsB[sol[9]] + elementsA[sol[10]] + elementsB[sol[11]] + elementsA[sol[12]] + elementsA[sol[13]] + elementsA[sol[14]];
-		        	
-			        		        
-			        Expression expression = null;
-			        
-			        try {
-			        	expression = parse(cadena);
-			        	fitness = Double.valueOf(expression.eval().doubleValue());
-			        } catch (Exception e) {
-			        	fitness = DEFAULT;
-			        }
-			        
-			        if (Double.valueOf(fitness).isNaN() || Double.valueOf(fitness).isInfinite())
-			        	fitness = DEFAULT;
-			        
-		        	target_validation[a] =  Double.valueOf(fitness);
-		        	
-		        }
+		        // Compile the solution once and evaluate the reduced expression on every row
+		        target_validation = CompiledGenome.compile(sol, dataset_validation).evaluate(dataset_validation);
 		        							
 		        //number = Double.valueOf(getPearson(source_validation, target_validation));
 		        //number = Double.valueOf(getSpearman(source_validation, target_validation));
 		        //number = Double.valueOf(getValid(source_training, target_training));
 		        
 		        currentValidationValue = Double.valueOf(getPearson(source_validation, target_validation));
-		        // Update bestValidationValue if the current value is better
-		        if (currentValidationValue > bestValidationValue) {
-		            bestValidationValue = currentValidationValue;
-		            bestValidationSolution = sol.clone(); // Cloning to avoid reference issues
-		        }
+		        // Offer the solution to the hall of fame, which keeps it if it is among the best
+		        validationHallOfFame.offer(sol, currentValidationValue);
 		        
 		        return currentValidationValue;
 		 
@@ -606,28 +849,57 @@ public class Model {
     }
     
     
+    // Number of rows of the loaded training data
+    static int getTrainingSize() {
+        return dataset_training == null ? 0 : dataset_training.size();
+    }
+
+    // The loaded training data, or null if none is loaded
+    static Dataset getTrainingDataset() {
+        return dataset_training;
+    }
+
+    // Base measure scores a, b, c and d of a row of the loaded training data
+    static double[] getTrainingRow(int index) {
+        return dataset_training.getRow(index);
+    }
+
     // Getter methods for best values and best solutions
     public static double getBestTrainingValue() {
-        return bestTrainingValue;
+        HallOfFame.Entry best = trainingHallOfFame.best();
+        return best == null ? Double.NEGATIVE_INFINITY : best.score;
     }
 
     public static int[] getBestTrainingSolution() {
-        return bestTrainingSolution;
+        HallOfFame.Entry best = trainingHallOfFame.best();
+        return best == null ? null : best.getGenes();
     }
 
     public static double getBestValidationValue() {
-        return bestValidationValue;
+        HallOfFame.Entry best = validationHallOfFame.best();
+        return best == null ? Double.NEGATIVE_INFINITY : best.score;
     }
 
     public static int[] getBestValidationSolution() {
-        return bestValidationSolution;
+        HallOfFame.Entry best = validationHallOfFame.best();
+        return best == null ? null : best.getGenes();
+    }
+
+    // Best distinct solutions found during training, e.g. to seed the populations of another problem
+    public static HallOfFame getTrainingHallOfFame() {
+        return trainingHallOfFame;
+    }
+
+    // Best distinct solutions found during validation
+    public static HallOfFame getValidationHallOfFame() {
+        return validationHallOfFame;
     }
     
     // Method to print the best training solution
     public static void printBestTrainingSolution() {
-        if (bestTrainingSolution != null) {
-            //System.out.println("Best Training Solution: " + Arrays.toString(bestTrainingSolution));
-            System.out.println("Best Training Value: " + bestTrainingValue);
+        if (trainingHallOfFame.best() != null) {
+            //System.out.println("Best Training Solution: " + Arrays.toString(getBestTrainingSolution()));
+            System.out.println("Best Training Value: " + getBestTrainingValue());
         } else {
             System.out.println("No training solution has been calculated yet.");
         }
@@ -635,9 +907,9 @@ public class Model {
 
     // Method to print the best validation solution
     public static void printBestValidationSolution() {
-        if (bestValidationSolution != null) {
-            //System.out.println("Best Validation Solution: " + Arrays.toString(bestValidationSolution));
-            System.out.println("Best Validation Value: " + bestValidationValue);
+        if (validationHallOfFame.best() != null) {
+            //System.out.println("Best Validation Solution: " + Arrays.toString(getBestValidationSolution()));
+            System.out.println("Best Validation Value: " + getBestValidationValue());
         } else {
             System.out.println("No validation solution has been calculated yet.");
         }
@@ -645,19 +917,20 @@ public class Model {
     
     
     public static void reset() {
-        data_training = new ArrayList<Double[]>();
-        data_validation = new ArrayList<Double[]>();
-
         source_validation = null;
         source_training = null;
 
         target_validation = null;
         target_training = null;
 
-        bestTrainingValue = Double.NEGATIVE_INFINITY;
-        bestValidationValue = Double.NEGATIVE_INFINITY;
-        bestTrainingSolution = null;
-        bestValidationSolution = null;
+        dataset_training = null;
+        dataset_validation = null;
+
+        trainingHallOfFame.clear();
+        validationHallOfFame.clear();
+
+        FitnessCalc.MODEL.clearCache();
+        FitnessCalc.MODEL.clearQuarantine();
 
         // Reset other necessary fields or data structures
     }
@@ -0,0 +1,261 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores solutions on several datasets at once, e.g. rg, mc, ws353 and simlex, so that models
+ * which generalise across them can be evolved directly.
+ *
+ * A solution is compiled once for the score range of all the datasets and evaluated on each of
+ * them, one after the other or in parallel. The result is a vector of Pearson correlations,
+ * which an Aggregate turns into a single fitness. A FitnessCalc created with an instance scores
+ * individuals by that fitness.
+ */
+public class MultiTaskFitness {
+
+    // Ways of turning the correlations on the datasets into one fitness
+    public enum Aggregate {
+        MEAN,       // the mean correlation
+        MIN,        // the correlation on the dataset the solution does worst on
+        WEIGHTED    // the mean correlation weighted by the given weights
+    }
+
+    private final Dataset[] datasets;
+    private final Aggregate aggregate;
+    private final double[] weights;
+    // Smallest and largest base measure score of all datasets
+    private final double lower;
+    private final double upper;
+    // Evaluates the datasets in parallel, or null to evaluate them on the calling thread
+    private volatile ExecutorService executor = null;
+
+    /**
+     * @param datasets The datasets to score on.
+     * @param aggregate How the correlations become one fitness.
+     * @param weights The weight of each dataset for WEIGHTED, or null for the others.
+     */
+    public MultiTaskFitness(List<Dataset> datasets, Aggregate aggregate, double[] weights) {
+        if (datasets.isEmpty()) throw new IllegalArgumentException("No datasets to score on");
+        if (aggregate == Aggregate.WEIGHTED && (weights == null || weights.length != datasets.size()))
+            throw new IllegalArgumentException("Expected one weight per dataset for " + aggregate);
+        this.datasets = datasets.toArray(new Dataset[0]);
+        this.aggregate = aggregate;
+        this.weights = weights == null ? null : weights.clone();
+
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (Dataset data : this.datasets) {
+            if (data.size() == 0) continue;
+            lower = Math.min(lower, data.getLower());
+            upper = Math.max(upper, data.getUpper());
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    // Scores the genome files given after the datasets on every dataset, or evolves a solution
+    // with the mean correlation as fitness when no genome file is given
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: MultiTaskFitness <dataset>[,<dataset> ...] [<genome file> ...]");
+            return;
+        }
+        List<Dataset> datasets = new ArrayList<Dataset>();
+        for (String filename : args[0].split(",")) {
+            datasets.add(Dataset.load(filename.trim()));
+        }
+        MultiTaskFitness fitness = new MultiTaskFitness(datasets, Aggregate.MEAN, null);
+        fitness.setThreads(Math.min(datasets.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            if (args.length > 1) {
+                for (int i = 1; i < args.length; i++) {
+                    for (int[] sol : HallOfFame.load(args[i])) {
+                        double[] correlations = fitness.correlations(sol, null);
+                        System.out.println(FitnessCalc.toString(sol) + "\t" + Arrays.toString(correlations)
+                                + "\t" + fitness.aggregate(correlations));
+                    }
+                }
+                return;
+            }
+            FitnessCalc calc = new FitnessCalc(fitness);
+            calc.setBatching(true);
+            Population pop = new Population(Algorithm.config().populationSize, true, calc);
+            int generation = 0;
+            Termination termination = Termination.standard();
+            // Each generation is scored together before the termination criteria read its fitness
+            pop.evaluate();
+            while (!termination.shouldStop(pop, generation)) {
+                pop = Algorithm.evolvePopulation(pop);
+                pop.evaluate();
+                generation++;
+            }
+            int[] best = pop.getFittest().vectorizeNumeric();
+            System.out.println("INFO: Stopped after " + generation + " generations: " + termination.getReason());
+            System.out.println("Best Solution: " + FitnessCalc.toString(best));
+            System.out.println("Correlations: " + Arrays.toString(fitness.correlations(best, null)));
+            System.out.println(calc.report());
+        } finally {
+            fitness.setThreads(1);
+        }
+    }
+
+    /* Public methods */
+
+    // Evaluates the datasets of a solution on the given number of threads. One evaluates them on
+    // the calling thread. Call with one when done to release the threads
+    public void setThreads(int threads) {
+        ExecutorService previous = executor;
+        executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        if (previous != null) previous.shutdown();
+    }
+
+    /**
+     * Compute the correlations of a solution on every dataset.
+     * @param sol The genes of the solution.
+     * @param budget The limits on the evaluation of each dataset, or null for none.
+     * @return The Pearson correlation on each dataset, in the order they were given.
+     * @throws EvaluationBudget.Exceeded If an evaluation goes over the budget.
+     */
+    public double[] correlations(int[] sol, final EvaluationBudget budget) {
+        final CompiledGenome genome = compile(sol);
+        double[] correlations = new double[datasets.length];
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            for (int i = 0; i < datasets.length; i++) {
+                correlations[i] = genome.correlate(datasets[i], budget);
+            }
+            return correlations;
+        }
+        List<Future<Double>> futures = new ArrayList<Future<Double>>();
+        for (final Dataset data : datasets) {
+            futures.add(executor.submit(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return genome.correlate(data, budget);
+                }
+            }));
+        }
+        for (int i = 0; i < datasets.length; i++) {
+            try {
+                correlations[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                // Evaluation only throws unchecked exceptions, e.g. EvaluationBudget.Exceeded
+                throw (RuntimeException) e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scoring " + FitnessCalc.toString(sol));
+            }
+        }
+        return correlations;
+    }
+
+    /**
+     * Compute the fitness of several solutions, reading each dataset once for all of them with BatchEvaluation.
+     * @param genomes The solutions, compiled with compile.
+     * @param budget The limits on the evaluation of each dataset, or null for none.
+     * @param exceeded Receives, for each solution that went over the budget on a dataset, the exception it threw.
+     * @return The aggregated correlations of each solution, or NaN for the solutions that went over the budget.
+     */
+    double[] scores(final CompiledGenome[] genomes, final EvaluationBudget budget, EvaluationBudget.Exceeded[] exceeded) {
+        double[][] correlations = new double[datasets.length][];
+        EvaluationBudget.Exceeded[][] perDataset = new EvaluationBudget.Exceeded[datasets.length][genomes.length];
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            for (int d = 0; d < datasets.length; d++) {
+                correlations[d] = BatchEvaluation.correlate(genomes, datasets[d], budget, perDataset[d]);
+            }
+        } else {
+            List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+            for (int d = 0; d < datasets.length; d++) {
+                final Dataset data = datasets[d];
+                final EvaluationBudget.Exceeded[] over = perDataset[d];
+                futures.add(executor.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() {
+                        return BatchEvaluation.correlate(genomes, data, budget, over);
+                    }
+                }));
+            }
+            for (int d = 0; d < datasets.length; d++) {
+                try {
+                    correlations[d] = futures.get(d).get();
+                } catch (ExecutionException e) {
+                    throw (RuntimeException) e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while scoring " + genomes.length + " solutions");
+                }
+            }
+        }
+        double[] scores = new double[genomes.length];
+        double[] solution = new double[datasets.length];
+        for (int g = 0; g < genomes.length; g++) {
+            for (int d = 0; d < datasets.length; d++) {
+                solution[d] = correlations[d][g];
+                if (exceeded[g] == null) exceeded[g] = perDataset[d][g];
+            }
+            scores[g] = exceeded[g] != null ? Double.NaN : aggregate(solution);
+        }
+        return scores;
+    }
+
+    // Compiles a solution for the score range of all the datasets
+    CompiledGenome compile(int[] sol) {
+        return lower <= upper ? CompiledGenome.compile(sol, lower, upper) : CompiledGenome.compile(sol);
+    }
+
+    // Turns the correlations on the datasets into one fitness
+    public double aggregate(double[] correlations) {
+        double result;
+        switch (aggregate) {
+            case MIN:
+                result = Double.POSITIVE_INFINITY;
+                for (double correlation : correlations) {
+                    result = Math.min(result, correlation);
+                }
+                return result;
+            case WEIGHTED:
+                double sum = 0;
+                double total = 0;
+                for (int i = 0; i < correlations.length; i++) {
+                    sum += weights[i] * correlations[i];
+                    total += weights[i];
+                }
+                return total == 0 ? 0 : sum / total;
+            default:
+                result = 0;
+                for (double correlation : correlations) {
+                    result += correlation;
+                }
+                return result / correlations.length;
+        }
+    }
+
+    // The fitness of a solution: its correlations on the datasets, aggregated
+    public double score(int[] sol, EvaluationBudget budget) {
+        return aggregate(correlations(sol, budget));
+    }
+
+    public List<Dataset> getDatasets() {
+        return Arrays.asList(datasets);
+    }
+
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+}
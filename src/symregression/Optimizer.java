@@ -0,0 +1,158 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.Expression;
+
+/**
+ * Compile-time reduction of genome expressions, so that per row only the parts that depend
+ * on the variables are evaluated.
+ *
+ * - Subtrees without variables are evaluated once and replaced by their value.
+ * - A subtree that fails whatever the row (e.g. "1/0" or an invalid glued operand) makes every
+ *   row fail, so the whole expression is replaced by the DEFAULT value those rows would get.
+ *   Constant powers too large for IntervalAnalysis.MAX_POW_BITS count as failing.
+ * - Operands of a maximum or minimum that can never win, given the range of the variables,
+ *   are dropped, as long as they cannot fail.
+ * - The exact rewrites of the Canonicalizer are applied in between, which also drops
+ *   operands such as the x in "x * 0".
+ */
+public class Optimizer {
+
+    // Maximum number of folding and canonicalization rounds
+    private static final int MAX_ROUNDS = 4;
+
+    // Thrown internally when a subtree fails for every row
+    private static class AlwaysFails extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Reduce an expression.
+     * @param expression The expression, as built by Model.parseGenome.
+     * @param lower The smallest value of any variable, or null if unknown.
+     * @param upper The largest value of any variable, or null if unknown.
+     * @return An expression that gives the same value on every row within the bounds.
+     */
+    public static Expression optimize(Expression expression, BigRational lower, BigRational upper) {
+        try {
+            String previous = null;
+            for (int round = 0; round < MAX_ROUNDS; round++) {
+                expression = Canonicalizer.canonicalize(fold(expression, lower, upper));
+                String current = expression.toString();
+                if (current.equals(previous)) break;
+                previous = current;
+            }
+            return expression;
+        } catch (AlwaysFails e) {
+            return new Model.Number(BigRational.valueOf(Model.DEFAULT));
+        }
+    }
+
+    /* Helpers */
+
+    private static Expression fold(Expression expression, BigRational lower, BigRational upper) throws AlwaysFails {
+        if (expression instanceof Model.Template) {
+            // A glued operand without variables only stays a template when it is not a valid number
+            if (!((Model.Template) expression).isVariable()) throw new AlwaysFails();
+            return expression;
+        }
+        if (!(expression instanceof BinaryExpression)) {
+            return expression;
+        }
+
+        BinaryExpression binary = (BinaryExpression) expression;
+        Expression left = fold(binary.leftOperand, lower, upper);
+        Expression right = fold(binary.rightOperand, lower, upper);
+
+        if (left instanceof Model.Number && right instanceof Model.Number) {
+            try {
+                if (binary.operator == Model.BinaryOperator.POW) {
+                    IntervalAnalysis.checkPower(left.eval(), right.eval().intValue());
+                }
+                return new Model.Number(binary.operator.eval(left.eval(), right.eval()));
+            } catch (RuntimeException e) {
+                throw new AlwaysFails();
+            }
+        }
+
+        switch (binary.operator) {
+            case MAX:
+                if (isAtMost(left, right, lower, upper) && Canonicalizer.cannotFail(left)) return right;
+                if (isAtMost(right, left, lower, upper) && Canonicalizer.cannotFail(right)) return left;
+                break;
+            case MIN:
+                if (isAtMost(right, left, lower, upper) && Canonicalizer.cannotFail(left)) return right;
+                if (isAtMost(left, right, lower, upper) && Canonicalizer.cannotFail(right)) return left;
+                break;
+            default:
+                break;
+        }
+        return new BinaryExpression(left, binary.operator, right);
+    }
+
+    // Whether e1 is known to be no greater than e2 on every row
+    private static boolean isAtMost(Expression e1, Expression e2, BigRational lower, BigRational upper) {
+        BigRational[] b1 = bounds(e1, lower, upper);
+        BigRational[] b2 = bounds(e2, lower, upper);
+        return b1[1] != null && b2[0] != null && b1[1].compareTo(b2[0]) <= 0;
+    }
+
+    // Exact lower and upper bound of an expression, with null for an unknown bound
+    static BigRational[] bounds(Expression expression, BigRational lower, BigRational upper) {
+        if (expression instanceof Model.Number) {
+            BigRational value = expression.eval();
+            return new BigRational[] {value, value};
+        }
+        if (expression instanceof Model.Variable) {
+            return new BigRational[] {lower, upper};
+        }
+        if (!(expression instanceof BinaryExpression)) {
+            return new BigRational[] {null, null};
+        }
+
+        BinaryExpression binary = (BinaryExpression) expression;
+        BigRational[] l = bounds(binary.leftOperand, lower, upper);
+        BigRational[] r = bounds(binary.rightOperand, lower, upper);
+        switch (binary.operator) {
+            case ADD:
+                return new BigRational[] {add(l[0], r[0]), add(l[1], r[1])};
+            case SUB:
+                return new BigRational[] {subtract(l[0], r[1]), subtract(l[1], r[0])};
+            case MUL:
+                if (l[0] == null || l[1] == null || r[0] == null || r[1] == null) break;
+                BigRational[] products = {l[0].multiply(r[0]), l[0].multiply(r[1]), l[1].multiply(r[0]), l[1].multiply(r[1])};
+                BigRational min = products[0];
+                BigRational max = products[0];
+                for (BigRational product : products) {
+                    min = min.min(product);
+                    max = max.max(product);
+                }
+                return new BigRational[] {min, max};
+            case MAX:
+                return new BigRational[] {l[0] == null ? r[0] : r[0] == null ? l[0] : l[0].max(r[0]),
+                                          l[1] == null || r[1] == null ? null : l[1].max(r[1])};
+            case MIN:
+                return new BigRational[] {l[0] == null || r[0] == null ? null : l[0].min(r[0]),
+                                          l[1] == null ? r[1] : r[1] == null ? l[1] : l[1].min(r[1])};
+            default:
+                break;
+        }
+        return new BigRational[] {null, null};
+    }
+
+    private static BigRational add(BigRational a, BigRational b) {
+        return a == null || b == null ? null : a.add(b);
+    }
+
+    private static BigRational subtract(BigRational a, BigRational b) {
+        return a == null || b == null ? null : a.subtract(b);
+    }
+}
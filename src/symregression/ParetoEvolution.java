@@ -0,0 +1,268 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * NSGA-II style evolution on two objectives: the fitness (Pearson correlation, higher is better)
+ * and the cost of the individual (size of its compiled program, lower is better).
+ *
+ * Each generation the parents are ranked by fast non-dominated sorting and crowding distance,
+ * offspring are bred from crowded binary tournaments with the crossover and mutation of
+ * Algorithm, and parents and offspring together are cut back to the population size, best
+ * fronts first. The first front holds the trade-offs between accuracy and cost; exportFront
+ * writes it out so the cheapest model that is accurate enough can be picked.
+ */
+public class ParetoEvolution {
+
+    // Number of individuals in each crowded tournament
+    private static final int TOURNAMENT_SIZE = 2;
+
+    /* Public methods */
+
+    // Evolves a given population over one generation
+    public static Population evolvePopulation(Population pop) throws Exception {
+        int size = pop.size();
+        double[] fitness = fitnessOf(pop.individuals);
+        double[] cost = costOf(pop.individuals);
+        int[] rank = rank(fitness, cost);
+        double[] crowding = crowdingDistance(fitness, cost, rank);
+
+        // Breed the offspring from the ranked parents
+        Population offspring = new Population(size, false);
+        for (int i = 0; i < size; i++) {
+            Individual indiv1 = pop.getIndividual(tournamentSelection(rank, crowding));
+            Individual indiv2 = pop.getIndividual(tournamentSelection(rank, crowding));
+            offspring.saveIndividual(i, Algorithm.crossover(indiv1, indiv2));
+        }
+        for (int i = 0; i < size; i++) {
+            Algorithm.mutate(offspring.getIndividual(i));
+        }
+        if (Algorithm.config().filterDuplicates) {
+            offspring.filterDuplicates(0);
+        }
+
+        // Keep the best of parents and offspring together
+        Individual[] merged = new Individual[2 * size];
+        System.arraycopy(pop.individuals, 0, merged, 0, size);
+        System.arraycopy(offspring.individuals, 0, merged, size, size);
+        fitness = fitnessOf(merged);
+        cost = costOf(merged);
+        rank = rank(fitness, cost);
+        crowding = crowdingDistance(fitness, cost, rank);
+        int[] order = new int[merged.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sort(order, rank, crowding);
+
+        Population newPopulation = new Population(size, false);
+        for (int i = 0; i < size; i++) {
+            newPopulation.saveIndividual(i, merged[order[i]]);
+        }
+        return newPopulation;
+    }
+
+    // Returns the individuals of the first front, from the cheapest to the most expensive
+    public static List<Individual> getFront(Population pop) throws Exception {
+        double[] fitness = fitnessOf(pop.individuals);
+        double[] cost = costOf(pop.individuals);
+        int[] rank = rank(fitness, cost);
+        int[] front = new int[pop.size()];
+        int count = 0;
+        for (int i = 0; i < rank.length; i++) {
+            if (rank[i] == 0) front[count++] = i;
+        }
+        sortByObjective(front, count, cost);
+
+        List<Individual> result = new ArrayList<Individual>();
+        for (int i = 0; i < count; i++) {
+            // Individuals sharing both objectives are listed once
+            if (i > 0 && cost[front[i]] == cost[front[i - 1]] && fitness[front[i]] == fitness[front[i - 1]]) continue;
+            result.add(pop.getIndividual(front[i]));
+        }
+        return result;
+    }
+
+    // Writes the first front as a tab separated file: fitness, cost, genes and canonical form
+    public static void exportFront(Population pop, String filename) throws Exception {
+        Writer out = new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8);
+        try {
+            out.write("fitness\tcost\tsolution\texpression\n");
+            for (Individual individual : getFront(pop)) {
+                out.write(individual.getFitness() + "\t" + individual.getCost() + "\t"
+                        + FitnessCalc.toString(individual.vectorizeNumeric()) + "\t" + individual.getCanonicalForm() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Fast non-dominated sorting.
+     * @param fitness Fitness of each individual, to be maximised.
+     * @param cost Cost of each individual, to be minimised.
+     * @return The front of each individual, 0 for the non-dominated ones.
+     */
+    static int[] rank(double[] fitness, double[] cost) {
+        int n = fitness.length;
+        // Individuals dominated by each individual, and the number of individuals dominating it
+        int[][] dominated = new int[n][];
+        int[] dominatedCount = new int[n];
+        int[] dominators = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            int count = 0;
+            for (int j = 0; j < n; j++) {
+                if (dominates(i, j, fitness, cost)) {
+                    buffer[count++] = j;
+                } else if (dominates(j, i, fitness, cost)) {
+                    dominators[i]++;
+                }
+            }
+            dominated[i] = Arrays.copyOf(buffer, count);
+            dominatedCount[i] = count;
+        }
+
+        int[] rank = new int[n];
+        int[] current = new int[n];
+        int currentSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (dominators[i] == 0) current[currentSize++] = i;
+        }
+        int[] next = new int[n];
+        for (int front = 0; currentSize > 0; front++) {
+            int nextSize = 0;
+            for (int k = 0; k < currentSize; k++) {
+                int i = current[k];
+                rank[i] = front;
+                for (int j : dominated[i]) {
+                    if (--dominators[j] == 0) next[nextSize++] = j;
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+        return rank;
+    }
+
+    /**
+     * Crowding distance of each individual within its front.
+     * @param fitness Fitness of each individual.
+     * @param cost Cost of each individual.
+     * @param rank Front of each individual, as given by rank.
+     * @return The crowding distance, infinite for the extremes of a front.
+     */
+    static double[] crowdingDistance(double[] fitness, double[] cost, int[] rank) {
+        int n = fitness.length;
+        double[] distance = new double[n];
+        int fronts = 0;
+        for (int r : rank) {
+            fronts = Math.max(fronts, r + 1);
+        }
+        int[] members = new int[n];
+        for (int front = 0; front < fronts; front++) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (rank[i] == front) members[count++] = i;
+            }
+            addCrowding(members, count, fitness, distance);
+            addCrowding(members, count, cost, distance);
+        }
+        return distance;
+    }
+
+    /* Helpers */
+
+    // Whether individual i is at least as good as j in both objectives and better in one
+    private static boolean dominates(int i, int j, double[] fitness, double[] cost) {
+        return fitness[i] >= fitness[j] && cost[i] <= cost[j] && (fitness[i] > fitness[j] || cost[i] < cost[j]);
+    }
+
+    // Adds the normalised distance between the neighbours of each member along one objective
+    private static void addCrowding(int[] members, int count, double[] values, double[] distance) {
+        if (count == 0) return;
+        sortByObjective(members, count, values);
+        double range = values[members[count - 1]] - values[members[0]];
+        distance[members[0]] = Double.POSITIVE_INFINITY;
+        distance[members[count - 1]] = Double.POSITIVE_INFINITY;
+        if (range == 0) return;
+        for (int k = 1; k < count - 1; k++) {
+            distance[members[k]] += (values[members[k + 1]] - values[members[k - 1]]) / range;
+        }
+    }
+
+    // Sorts the first count members by ascending value. Fronts are small, so insertion sort will do
+    private static void sortByObjective(int[] members, int count, double[] values) {
+        for (int k = 1; k < count; k++) {
+            int member = members[k];
+            int j = k - 1;
+            while (j >= 0 && values[members[j]] > values[member]) {
+                members[j + 1] = members[j];
+                j--;
+            }
+            members[j + 1] = member;
+        }
+    }
+
+    // Sorts indices by ascending front and, within a front, by descending crowding distance
+    private static void sort(int[] order, int[] rank, double[] crowding) {
+        for (int k = 1; k < order.length; k++) {
+            int index = order[k];
+            int j = k - 1;
+            while (j >= 0 && isWorse(order[j], index, rank, crowding)) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+
+    // Crowded comparison: whether individual i comes after individual j
+    private static boolean isWorse(int i, int j, int[] rank, double[] crowding) {
+        return rank[i] > rank[j] || (rank[i] == rank[j] && crowding[i] < crowding[j]);
+    }
+
+    // Picks the best of TOURNAMENT_SIZE random individuals by the crowded comparison
+    private static int tournamentSelection(int[] rank, double[] crowding) {
+        Random randomGenerator = Algorithm.random();
+        int best = randomGenerator.nextInt(rank.length);
+        for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+            int candidate = randomGenerator.nextInt(rank.length);
+            if (isWorse(best, candidate, rank, crowding)) best = candidate;
+        }
+        return best;
+    }
+
+    private static double[] fitnessOf(Individual[] individuals) throws Exception {
+        double[] fitness = new double[individuals.length];
+        for (int i = 0; i < individuals.length; i++) {
+            fitness[i] = individuals[i].getFitness();
+        }
+        return fitness;
+    }
+
+    private static double[] costOf(Individual[] individuals) {
+        double[] cost = new double[individuals.length];
+        for (int i = 0; i < individuals.length; i++) {
+            cost[i] = individuals[i].getCost();
+        }
+        return cost;
+    }
+}
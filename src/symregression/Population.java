@@ -8,8 +8,19 @@
 
 package symregression;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 public class Population {
 
+    // Number of times a duplicate is mutated before it is accepted as it is
+    private static final int DUPLICATE_ATTEMPTS = 10;
+
     // Array to store individuals in the population
     Individual[] individuals;
 
@@ -20,12 +31,18 @@ public class Population {
     // Constructor to create a population with a given size.
     // If initialise is true, each individual in the population is generated and initialized.
     public Population(int populationSize, boolean initialise) throws Exception {
+        this(populationSize, initialise, FitnessCalc.MODEL);
+    }
+
+    // Constructor to create a population whose generated individuals are scored by the given calculator.
+    public Population(int populationSize, boolean initialise, FitnessCalc fitnessCalc) throws Exception {
         individuals = new Individual[populationSize];
         // Initialise population if required
         if (initialise) {
             // Loop through the population array and create new individuals
             for (int i = 0; i < size(); i++) {
                 Individual newIndividual = new Individual();
+                newIndividual.fitnessCalc = fitnessCalc;
                 newIndividual.generateIndividual(); // Generates the attributes of an individual
                 saveIndividual(i, newIndividual); // Store the new individual in the population
             }
@@ -43,6 +60,7 @@ public class Population {
             // Generate new individuals for the rest of the population
             for (int i = 1; i < populationSize; i++) {
                 Individual newIndividual = new Individual();
+                newIndividual.fitnessCalc = predefinedIndividual.fitnessCalc; // Scored like the predefined one
                 newIndividual.generateIndividual(); // Generates the attributes of an individual
                 individuals[i] = newIndividual; // Store the new individual in the population
             }
@@ -80,5 +98,41 @@ public class Population {
     public void saveIndividual(int index, Individual indiv) throws Exception {
         individuals[index] = indiv;
     }
+
+    // Scores the individuals that have no fitness yet together, one group per calculator,
+    // for the calculators that share subexpressions between individuals
+    public void evaluate() {
+        Map<FitnessCalc, List<Individual>> groups = new IdentityHashMap<FitnessCalc, List<Individual>>();
+        for (Individual indiv : individuals) {
+            if (indiv == null || indiv.hasFitness()) continue;
+            List<Individual> group = groups.get(indiv.fitnessCalc);
+            if (group == null) {
+                group = new ArrayList<Individual>();
+                groups.put(indiv.fitnessCalc, group);
+            }
+            group.add(indiv);
+        }
+        for (Map.Entry<FitnessCalc, List<Individual>> group : groups.entrySet()) {
+            group.getKey().evaluateShared(group.getValue());
+        }
+    }
+
+    // Mutates individuals from the given offset on that are algebraically equivalent to an earlier one,
+    // so that a generation does not spend evaluations on the same function twice
+    public void filterDuplicates(int offset) {
+        Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < offset; i++) {
+            seen.add(individuals[i].getCanonicalForm());
+        }
+        Random randomGenerator = Algorithm.random();
+        for (int i = offset; i < size(); i++) {
+            Individual indiv = individuals[i];
+            for (int attempt = 0; attempt < DUPLICATE_ATTEMPTS; attempt++) {
+                String canonicalForm = indiv.getCanonicalForm();
+                if (canonicalForm == null || seen.add(canonicalForm)) break;
+                indiv.setGene(randomGenerator.nextInt(indiv.size()), randomGenerator.nextInt(7));
+            }
+        }
+    }
 }
 
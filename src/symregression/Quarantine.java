@@ -0,0 +1,93 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Genomes that went over their evaluation budget, by the dataset they were evaluated on and their
+ * canonical form. FitnessCalc looks them up before evaluating and gives them the penalty fitness
+ * straight away. A genome that goes over the budget on one dataset may well stay within it on
+ * another, so it is only quarantined for the dataset it went over on.
+ *
+ * A quarantine can be backed by a file holding one genome per line: the dataset, its canonical form
+ * and the reason, separated by tabs. New entries are appended as they are found, so later runs skip
+ * the same genomes from the start.
+ */
+public class Quarantine {
+
+    // File the entries are appended to, or null to keep them in memory only
+    private final File file;
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+    // Creates an empty quarantine kept in memory only
+    public Quarantine() {
+        this.file = null;
+    }
+
+    // Creates a quarantine backed by a file, reading the entries it already holds
+    public Quarantine(File file) throws IOException {
+        this.file = file;
+        if (!file.exists()) return;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Lines without both a dataset and a genome are skipped
+                int first = line.indexOf('\t');
+                int second = first < 0 ? -1 : line.indexOf('\t', first + 1);
+                if (first > 0 && second > first + 1) keys.add(line.substring(0, second));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public boolean contains(String dataset, String key) {
+        return keys.contains(dataset + "\t" + key);
+    }
+
+    // Adds a genome for a dataset, appending it to the file if it was not there yet
+    public void add(String dataset, String key, String reason) {
+        String entry = dataset + "\t" + key;
+        if (!keys.add(entry) || file == null) return;
+        synchronized (this) {
+            try {
+                Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+                try {
+                    out.write(entry + "\t" + reason + "\n");
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                // The genome stays quarantined for this run
+                System.out.println("WARNING: Could not write to " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    // Forgets all entries held in memory. The file, if any, is left as it is
+    public void clear() {
+        keys.clear();
+    }
+}
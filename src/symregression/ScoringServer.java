@@ -0,0 +1,268 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server that scores word pairs with trained solutions.
+ *
+ * Endpoints:
+ *   POST /score[?model=name]  one "a, b, c, d" row of base measure scores per line,
+ *                             answered with one stacked similarity per line
+ *   POST /reload              reloads the genome files and swaps the models in
+ *   GET  /metrics             request counters and p50/p99 latency
+ *
+ * Genome files hold one solution per line, either "name = g0, g1, ..." or just the genes.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class ScoringServer {
+
+    // Files the models are loaded from
+    private final String[] genomeFiles;
+    // Current models by name. Replaced as a whole, so a request keeps the snapshot it started with
+    private final AtomicReference<Map<String, CompiledGenome>> models = new AtomicReference<>();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Counters exposed through /metrics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final LatencyRecorder latency = new LatencyRecorder(4096);
+
+    public ScoringServer(int port, String... genomeFiles) throws IOException {
+        this.genomeFiles = genomeFiles.clone();
+        models.set(loadModels(this.genomeFiles));
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/score", this::handleScore);
+        server.createContext("/reload", this::handleReload);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ScoringServer <port> <genome file> [<genome file> ...]");
+            return;
+        }
+        ScoringServer scoringServer = new ScoringServer(Integer.parseInt(args[0]), Arrays.copyOfRange(args, 1, args.length));
+        scoringServer.start();
+        System.out.println("INFO: Scoring server listening on port " + scoringServer.getPort()
+                + " with models " + scoringServer.models.get().keySet());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Reads the genome files again and atomically replaces the current models.
+    // Requests already running keep scoring with the models they started with.
+    public void reload() throws IOException {
+        models.set(loadModels(genomeFiles));
+        reloads.incrementAndGet();
+    }
+
+    // Scores a single row with the named model, or with the first model if name is null
+    public double score(String name, double[] row) {
+        return lookup(models.get(), name).evaluate(row);
+    }
+
+    /* Handlers */
+
+    private void handleScore(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Use POST\n");
+                return;
+            }
+            CompiledGenome genome = lookup(models.get(), queryParameter(exchange, "model"));
+
+            StringBuilder response = new StringBuilder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) continue;
+                response.append(genome.evaluate(parseRow(line))).append('\n');
+                rows.incrementAndGet();
+            }
+            respond(exchange, 200, response.toString());
+        } catch (IllegalArgumentException e) {
+            errors.incrementAndGet();
+            respond(exchange, 400, e.getMessage() + "\n");
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        try {
+            reload();
+            respond(exchange, 200, "Reloaded " + models.get().keySet() + "\n");
+        } catch (Exception e) {
+            // Keep serving the previous models if the new files cannot be read
+            errors.incrementAndGet();
+            respond(exchange, 500, "Reload failed: " + e.getMessage() + "\n");
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringBuilder response = new StringBuilder();
+        response.append("requests ").append(requests.get()).append('\n');
+        response.append("rows ").append(rows.get()).append('\n');
+        response.append("errors ").append(errors.get()).append('\n');
+        response.append("reloads ").append(reloads.get()).append('\n');
+        response.append("latency_p50_us ").append(latency.percentile(0.50) / 1000).append('\n');
+        response.append("latency_p99_us ").append(latency.percentile(0.99) / 1000).append('\n');
+        respond(exchange, 200, response.toString());
+    }
+
+    /* Helpers */
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static CompiledGenome lookup(Map<String, CompiledGenome> snapshot, String name) {
+        if (name == null) {
+            return snapshot.values().iterator().next();
+        }
+        CompiledGenome genome = snapshot.get(name);
+        if (genome == null) throw new IllegalArgumentException("Unknown model: " + name);
+        return genome;
+    }
+
+    // Parses the four base measure scores a, b, c and d of a row
+    private static double[] parseRow(String line) {
+        String[] fields = line.split(",");
+        if (fields.length != 4) throw new IllegalArgumentException("Expected 4 scores per row: " + line);
+        double[] row = new double[4];
+        for (int i = 0; i < 4; i++) {
+            row[i] = Double.parseDouble(fields[i].trim());
+        }
+        return row;
+    }
+
+    // Loads and compiles every genome of the given files into a fresh, read-only map
+    static Map<String, CompiledGenome> loadModels(String[] files) throws IOException {
+        Map<String, CompiledGenome> loaded = new LinkedHashMap<>();
+        for (String file : files) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() == 0 || line.startsWith("#")) continue;
+                    String name = "model" + loaded.size();
+                    int eq = line.indexOf('=');
+                    if (eq > 0) {
+                        name = line.substring(0, eq).trim();
+                        line = line.substring(eq + 1);
+                    }
+                    loaded.put(name, CompiledGenome.compile(Model.parseGenes(line)));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        if (loaded.isEmpty()) throw new IOException("No genomes found in " + Arrays.toString(files));
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    // Uses a virtual thread per request when the runtime supports them (Java 21+)
+    // and falls back to a cached pool of platform threads otherwise
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Keeps the most recent latency samples in a ring buffer.
+     * Recording is lock-free; percentiles are computed over a sorted copy.
+     */
+    static class LatencyRecorder {
+        private final AtomicLongArray samples;
+        private final AtomicLong count = new AtomicLong();
+
+        LatencyRecorder(int capacity) {
+            samples = new AtomicLongArray(capacity);
+        }
+
+        void record(long nanos) {
+            long slot = count.getAndIncrement();
+            samples.set((int) (slot % samples.length()), nanos);
+        }
+
+        // Returns the given percentile (0..1) of the recorded samples in nanoseconds
+        long percentile(double p) {
+            int n = (int) Math.min(count.get(), samples.length());
+            if (n == 0) return 0;
+            long[] sorted = new long[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+    }
+}
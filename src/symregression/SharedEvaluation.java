@@ -0,0 +1,237 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.Expression;
+
+/**
+ * Evaluates the compiled genomes of one generation together, computing every distinct
+ * subexpression only once.
+ *
+ * The expressions are merged into a DAG: two subexpressions are the same node when they apply
+ * the same operator to the same child nodes, or are the same constant, variable or glued operand.
+ * Each node gets an id when its values are computed, and parents refer to their children by id.
+ * Each node holds its values on every row of the dataset, computed from the values of its
+ * children, so genomes that share subtrees, as those of a converged population do, share their
+ * evaluation. Rows on which a node fails hold null, which fails every node above it, and give
+ * DEFAULT like in CompiledGenome. Powers are guarded as in CompiledGenome, which makes no
+ * difference for the genomes IntervalAnalysis finds safe.
+ *
+ * Without a memory budget, an instance lives for one generation and its values are dropped with
+ * it. They take a BigRational per row and node, so this suits datasets that fit on the heap.
+ *
+ * With a memory budget, an instance can be kept for a whole run. A mutated or crossed-over genome
+ * then finds the values of all its unchanged subtrees and only computes the nodes on the paths
+ * from the changed genes to the root, so its cost grows with the size of the change rather than
+ * the size of the genome. Nodes are evicted, least recently used first, once their estimated
+ * size exceeds the budget. An evicted node is simply computed again when needed, under a new id.
+ */
+public class SharedEvaluation {
+
+    // Estimated size of a BigRational whose numerator and denominator fit in a long
+    private static final long SMALL_VALUE_BYTES = 48;
+
+    private final Dataset data;
+    // Largest estimated size of the values kept, in bytes
+    private final long maxBytes;
+    // Values of the nodes evaluated so far, by node, least recently used first
+    private final LinkedHashMap<Node, Column> values = new LinkedHashMap<Node, Column>(16, 0.75f, true);
+    private long bytes = 0;
+    private long nextId = 0;
+    private long computed = 0;
+    private long reused = 0;
+    private long evicted = 0;
+
+    // Creates an evaluation for one generation, keeping all values until it is dropped
+    public SharedEvaluation(Dataset data) {
+        this(data, Long.MAX_VALUE);
+    }
+
+    // Creates an evaluation that can be kept for a run, keeping values of at most about maxBytes
+    public SharedEvaluation(Dataset data, long maxBytes) {
+        this.data = data;
+        this.maxBytes = maxBytes;
+    }
+
+    /* Public methods */
+
+    // Pearson correlation between the human judgements of the dataset and the values of a genome
+    // compiled for it. Gives exactly the fitness of evaluating the genome on its own. Threads
+    // sharing an instance take turns
+    public double correlate(CompiledGenome genome) {
+        return correlate(genome, null);
+    }
+
+    // Same as correlate(genome), but throws EvaluationBudget.Exceeded if computing the values the
+    // genome does not share with the genomes evaluated before goes over the given budget. Values
+    // computed in full before that are kept
+    public synchronized double correlate(CompiledGenome genome, EvaluationBudget budget) {
+        EvaluationBudget.Meter meter = budget == null ? null : budget.start(data.size());
+        BigRational[] column = evaluate(genome.getExpression(), meter).values;
+        Model.PearsonAccumulator pearson = new Model.PearsonAccumulator();
+        for (int a = 0; a < column.length; a++) {
+            double value;
+            try {
+                value = column[a] == null ? Model.DEFAULT : column[a].doubleValue();
+            } catch (RuntimeException e) {
+                value = Model.DEFAULT;
+            }
+            if (Double.isNaN(value) || Double.isInfinite(value))
+                value = Model.DEFAULT;
+            pearson.add(data.getJudgement(a), value);
+        }
+        return pearson.result();
+    }
+
+    // The dataset the values are computed on
+    Dataset getData() {
+        return data;
+    }
+
+    // Number of nodes whose values were computed
+    public long getComputed() {
+        return computed;
+    }
+
+    // Number of times the values of a node were reused by another expression
+    public long getReused() {
+        return reused;
+    }
+
+    // Number of nodes whose values were dropped to stay within the memory budget
+    public long getEvicted() {
+        return evicted;
+    }
+
+    // Estimated size of the values kept, in bytes
+    public long getBytes() {
+        return bytes;
+    }
+
+    /* Helpers */
+
+    // Values of an expression on every row, null on rows where it fails. Nodes whose values are
+    // computed are charged to the meter, if any; nodes found among the kept values are free
+    private Column evaluate(Expression expression, EvaluationBudget.Meter meter) {
+        Node node;
+        BigRational[] left = null;
+        BigRational[] right = null;
+        if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            Column leftColumn = evaluate(binary.leftOperand, meter);
+            Column rightColumn = evaluate(binary.rightOperand, meter);
+            left = leftColumn.values;
+            right = rightColumn.values;
+            node = new Node(binary.operator, leftColumn.id, rightColumn.id);
+        } else if (expression instanceof Model.Template) {
+            node = new Node(Model.Template.class, Arrays.toString(((Model.Template) expression).parts), null);
+        } else if (expression instanceof Model.Variable) {
+            node = new Node(Model.Variable.class, ((Model.Variable) expression).index, null);
+        } else {
+            node = new Node(Model.Number.class, expression.eval(), null);
+        }
+
+        Column known = values.get(node);
+        if (known != null) {
+            reused++;
+            return known;
+        }
+        computed++;
+        BigRational[] column = new BigRational[data.size()];
+        double[] buffer = new double[Dataset.FEATURES];
+        for (int a = 0; a < column.length; a++) {
+            try {
+                if (expression instanceof BinaryExpression) {
+                    if (left[a] == null || right[a] == null) continue;
+                    Model.BinaryOperator operator = ((BinaryExpression) expression).operator;
+                    if (operator == Model.BinaryOperator.POW) {
+                        IntervalAnalysis.checkPower(left[a], right[a].intValue());
+                    }
+                    if (meter != null) {
+                        meter.charge(operator, left[a], right[a]);
+                    }
+                    column[a] = operator.eval(left[a], right[a]);
+                } else {
+                    column[a] = expression.eval(data.getRow(a, buffer));
+                }
+            } catch (EvaluationBudget.Exceeded e) {
+                throw e; // The partial column is dropped
+            } catch (RuntimeException e) {
+                column[a] = null; // The row fails
+            }
+        }
+        Column result = new Column(nextId++, column);
+        values.put(node, result);
+        bytes += result.bytes;
+        evict();
+        return result;
+    }
+
+    // Drops the least recently used values until the rest fit in the budget. The caller keeps its
+    // own references to the columns it is still combining, so those stay valid
+    private void evict() {
+        Iterator<Column> iterator = values.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().bytes;
+            iterator.remove();
+            evicted++;
+        }
+    }
+
+    // Values of a node on every row, with the id its parents refer to it by
+    private static final class Column {
+        final long id;
+        final BigRational[] values;
+        final long bytes;
+
+        Column(long id, BigRational[] values) {
+            this.id = id;
+            this.values = values;
+            long bytes = 16 + 8L * values.length;
+            for (BigRational value : values) {
+                if (value == null) continue;
+                int bits = value.bitLength();
+                bytes += SMALL_VALUE_BYTES + (bits < 64 ? 0 : 2 * (24 + bits / 8));
+            }
+            this.bytes = bytes;
+        }
+    }
+
+    // A node of the DAG: an operator and the ids of its two children, or a kind of leaf and
+    // what identifies it
+    private static final class Node {
+        private final Object kind;
+        private final Object first;
+        private final Object second;
+
+        Node(Object kind, Object first, Object second) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) return false;
+            Node other = (Node) o;
+            return kind == other.kind && first.equals(other.first)
+                    && (second == null ? other.second == null : second.equals(other.second));
+        }
+
+        @Override
+        public int hashCode() {
+            return (kind.hashCode() * 31 + first.hashCode()) * 31 + (second == null ? 0 : second.hashCode());
+        }
+    }
+}
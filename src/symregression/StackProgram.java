@@ -0,0 +1,158 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import symregression.Model.BinaryExpression;
+import symregression.Model.BinaryOperator;
+import symregression.Model.Expression;
+
+/**
+ * An expression compiled to postfix instructions for a small stack machine.
+ *
+ * Every instruction is a pair of ints, an opcode and its argument: push a constant, push a
+ * variable, push a glued operand, or apply an operator to the two values on top of the stack.
+ * Running a program is one loop over the instructions, so its cost grows linearly with the
+ * length of the genome, and each variable of a row is converted to a BigRational only once.
+ * Operands are evaluated left to right, exactly as Expression.eval(row) does.
+ */
+final class StackProgram {
+
+    private static final int PUSH_CONSTANT = 0;
+    private static final int PUSH_VARIABLE = 1;
+    private static final int PUSH_TEMPLATE = 2;
+    private static final int APPLY = 3;
+
+    private static final BinaryOperator[] OPERATORS = BinaryOperator.values();
+
+    // Opcode and argument of each instruction
+    private final int[] code;
+    private final BigRational[] constants;
+    private final Model.Template[] templates;
+    // Largest number of values on the stack at any time
+    private final int maxDepth;
+
+    private StackProgram(int[] code, BigRational[] constants, Model.Template[] templates, int maxDepth) {
+        this.code = code;
+        this.constants = constants;
+        this.templates = templates;
+        this.maxDepth = maxDepth;
+    }
+
+    // Compiles an expression built by Model.parseGenome, possibly reduced by the Optimizer
+    static StackProgram compile(Expression expression) {
+        Builder builder = new Builder();
+        builder.emit(expression, 0);
+        return new StackProgram(Arrays.copyOf(builder.code, builder.length),
+                builder.constants.toArray(new BigRational[0]),
+                builder.templates.toArray(new Model.Template[0]), builder.maxDepth);
+    }
+
+    /**
+     * Run the program on a row.
+     * @param row The base measure scores bound to the variables a, b, c and d, or null if there are none.
+     * @param guardPowers Whether powers larger than IntervalAnalysis.MAX_POW_BITS fail the row.
+     * @param meter Meter the operators are charged to, or null.
+     * @return The value of the expression. Fails like Expression.eval(row) on rows that cannot be evaluated.
+     */
+    BigRational run(double[] row, boolean guardPowers, EvaluationBudget.Meter meter) {
+        return run(row, null, guardPowers, meter);
+    }
+
+    /**
+     * Run the program on a row whose variables may already be converted to BigRational values.
+     * @param row The base measure scores bound to the variables a, b, c and d, or null if there are none.
+     * @param variables The scores of the row as BigRational values, or null. Missing values are converted
+     *        when used and stored in it, so programs run one after the other on a row can share it.
+     * @param guardPowers Whether powers larger than IntervalAnalysis.MAX_POW_BITS fail the row.
+     * @param meter Meter the operators are charged to, or null.
+     * @return The value of the expression. Fails like Expression.eval(row) on rows that cannot be evaluated.
+     */
+    BigRational run(double[] row, BigRational[] variables, boolean guardPowers, EvaluationBudget.Meter meter) {
+        BigRational[] stack = new BigRational[maxDepth];
+        int top = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            int argument = code[pc + 1];
+            switch (code[pc]) {
+                case PUSH_CONSTANT:
+                    stack[top++] = constants[argument];
+                    break;
+                case PUSH_VARIABLE:
+                    if (variables == null) variables = new BigRational[Dataset.FEATURES];
+                    if (variables[argument] == null) {
+                        variables[argument] = BigRational.valueOf(String.valueOf(row[argument]));
+                    }
+                    stack[top++] = variables[argument];
+                    break;
+                case PUSH_TEMPLATE:
+                    stack[top++] = templates[argument].eval(row);
+                    break;
+                default:
+                    BinaryOperator operator = OPERATORS[argument];
+                    BigRational right = stack[--top];
+                    BigRational left = stack[top - 1];
+                    if (guardPowers && operator == BinaryOperator.POW) {
+                        IntervalAnalysis.checkPower(left, right.intValue());
+                    }
+                    if (meter != null) {
+                        meter.charge(operator, left, right);
+                    }
+                    stack[top - 1] = operator.eval(left, right);
+                    break;
+            }
+        }
+        return stack[0];
+    }
+
+    // Number of instructions
+    int size() {
+        return code.length / 2;
+    }
+
+    /**
+     * Collects the instructions of an expression in postfix order.
+     */
+    private static class Builder {
+        int[] code = new int[16];
+        int length = 0;
+        int maxDepth = 0;
+        final List<BigRational> constants = new ArrayList<BigRational>();
+        final List<Model.Template> templates = new ArrayList<Model.Template>();
+
+        // Emits the instructions of an expression whose value ends up at the given stack depth
+        void emit(Expression expression, int depth) {
+            maxDepth = Math.max(maxDepth, depth + 1);
+            if (expression instanceof BinaryExpression) {
+                BinaryExpression binary = (BinaryExpression) expression;
+                emit(binary.leftOperand, depth);
+                emit(binary.rightOperand, depth + 1);
+                add(APPLY, binary.operator.ordinal());
+            } else if (expression instanceof Model.Variable) {
+                add(PUSH_VARIABLE, ((Model.Variable) expression).index);
+            } else if (expression instanceof Model.Template) {
+                templates.add((Model.Template) expression);
+                add(PUSH_TEMPLATE, templates.size() - 1);
+            } else {
+                constants.add(expression.eval());
+                add(PUSH_CONSTANT, constants.size() - 1);
+            }
+        }
+
+        private void add(int opcode, int argument) {
+            if (length + 2 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = opcode;
+            code[length++] = argument;
+        }
+    }
+}
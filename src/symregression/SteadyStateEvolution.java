@@ -0,0 +1,225 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Steady-state evolution without generations.
+ *
+ * Worker threads each breed one offspring at a time: they pick two parents from the shared
+ * population by tournament, cross them over, mutate and evaluate the offspring, and then let it
+ * replace the worst individual if it is fitter. Replacement is a compare-and-set on the slot of
+ * the worst individual, retried if another worker changed it first, so no worker ever waits for
+ * another one. A slow evaluation only holds up the worker doing it.
+ *
+ * Breeding only starts once every initial individual has been evaluated, each exactly once.
+ *
+ * Every population size births count as one generation, at which a snapshot of the population is
+ * checked against the Termination. Keeping the fittest individual is implicit, as only the worst
+ * is ever replaced. Runs are not reproducible, as the order of the births depends on the timing
+ * of the workers.
+ */
+public class SteadyStateEvolution {
+
+    // The shared population. Individuals are evaluated before they are stored, so their fitness
+    // is only read in the population
+    private final AtomicReferenceArray<Individual> slots;
+    private final int threads;
+    // Index of the next initial individual to evaluate
+    private final AtomicInteger initial = new AtomicInteger();
+    // Counted down as the initial individuals are evaluated
+    private final CountDownLatch evaluated;
+    private final AtomicLong births = new AtomicLong();
+    private final AtomicLong replacements = new AtomicLong();
+    // Released whenever the births complete another generation
+    private final Semaphore generations = new Semaphore(0);
+    private volatile boolean stopped = false;
+
+    public SteadyStateEvolution(Population pop, int threads) {
+        slots = new AtomicReferenceArray<Individual>(pop.size());
+        for (int i = 0; i < pop.size(); i++) {
+            slots.set(i, pop.getIndividual(i));
+        }
+        this.threads = threads;
+        this.evaluated = new CountDownLatch(pop.size());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: SteadyStateEvolution <dataset> [threads] [seed]");
+            return;
+        }
+        Dataset data = Dataset.load(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 2) Algorithm.setSeed(Long.parseLong(args[2]));
+
+        FitnessCalc calc = new FitnessCalc(data);
+        SteadyStateEvolution evolution = new SteadyStateEvolution(
+                new Population(Algorithm.config().populationSize, true, calc), threads);
+        Termination termination = Termination.standard();
+        Individual best = evolution.run(termination).getFittest();
+        System.out.println("INFO: Stopped after " + evolution.getBirths() + " births, "
+                + evolution.getReplacements() + " replacements: " + termination.getReason());
+        System.out.println("Best Training Value: " + best.getFitness());
+        System.out.println("Best Training Solution: " + FitnessCalc.toString(best.vectorizeNumeric()));
+        System.out.println(calc.report());
+    }
+
+    /* Public methods */
+
+    /**
+     * Evolve the population until the termination criteria are met.
+     * Workers use the GA settings of the calling thread and are seeded from its random generator.
+     * @param termination The criteria, checked every population size births.
+     * @return The final population.
+     */
+    public Population run(Termination termination) throws Exception {
+        final GAConfig settings = Algorithm.config();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final long seed = Algorithm.random().nextLong();
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Algorithm.setConfig(settings);
+                        Algorithm.setSeed(seed);
+                        work();
+                        return null;
+                    }
+                }));
+            }
+
+            while (!evaluated.await(100, TimeUnit.MILLISECONDS)) {
+                checkWorkers(workers);
+            }
+            int generation = 0;
+            while (!termination.shouldStop(snapshot(), generation)) {
+                while (!generations.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    checkWorkers(workers);
+                }
+                generation++;
+            }
+        } finally {
+            stopped = true;
+            executor.shutdown();
+        }
+        for (Future<Void> worker : workers) {
+            worker.get();
+        }
+        return snapshot();
+    }
+
+    // Copies the current individuals into a population
+    public Population snapshot() throws Exception {
+        Population pop = new Population(slots.length(), false);
+        for (int i = 0; i < slots.length(); i++) {
+            pop.saveIndividual(i, slots.get(i));
+        }
+        return pop;
+    }
+
+    // Number of offspring bred so far
+    public long getBirths() {
+        return births.get();
+    }
+
+    // Number of offspring that replaced an individual
+    public long getReplacements() {
+        return replacements.get();
+    }
+
+    /* Helpers */
+
+    // Rethrows the failure of a worker, if one failed
+    private static void checkWorkers(List<Future<Void>> workers) throws Exception {
+        for (Future<Void> worker : workers) {
+            if (worker.isDone()) worker.get();
+        }
+    }
+
+    // Evaluates the initial individuals not taken by other workers, waits until the others have
+    // been evaluated too, then breeds until stopped
+    private void work() throws Exception {
+        int i;
+        while (!stopped && (i = initial.getAndIncrement()) < slots.length()) {
+            slots.get(i).getFitness();
+            evaluated.countDown();
+        }
+        while (!stopped && !evaluated.await(100, TimeUnit.MILLISECONDS)) {
+            // A failed worker stops the run, so this does not wait forever
+        }
+        boolean filterDuplicates = Algorithm.config().filterDuplicates;
+        while (!stopped) {
+            Individual child = Algorithm.crossover(tournamentSelection(), tournamentSelection());
+            Algorithm.mutate(child);
+            double fitness = child.getFitness();
+            if (replaceWorst(child, fitness, filterDuplicates)) {
+                replacements.incrementAndGet();
+            }
+            if (births.incrementAndGet() % slots.length() == 0) {
+                generations.release();
+            }
+        }
+    }
+
+    // Replaces the worst individual by the child if the child is fitter. Returns whether it did
+    private boolean replaceWorst(Individual child, double fitness, boolean filterDuplicates) throws Exception {
+        String canonicalForm = filterDuplicates ? child.getCanonicalForm() : null;
+        while (true) {
+            int worst = -1;
+            Individual worstIndividual = null;
+            double worstFitness = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < slots.length(); i++) {
+                Individual indiv = slots.get(i);
+                if (canonicalForm != null && canonicalForm.equals(indiv.getCanonicalForm())) {
+                    return false; // The population already has this function
+                }
+                double f = indiv.getFitness();
+                if (f < worstFitness) {
+                    worst = i;
+                    worstIndividual = indiv;
+                    worstFitness = f;
+                }
+            }
+            if (fitness <= worstFitness) {
+                return false;
+            }
+            if (slots.compareAndSet(worst, worstIndividual, child)) {
+                return true;
+            }
+            // Another worker replaced that individual meanwhile, look again
+        }
+    }
+
+    private Individual tournamentSelection() throws Exception {
+        int tournamentSize = Algorithm.config().tournamentSize;
+        Individual fittest = null;
+        for (int i = 0; i < tournamentSize; i++) {
+            Individual indiv = slots.get(Algorithm.random().nextInt(slots.length()));
+            if (fittest == null || fittest.getFitness() <= indiv.getFitness()) {
+                fittest = indiv;
+            }
+        }
+        return fittest;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides when an evolution run stops, and records why.
+ *
+ * A run is checked before every generation against a list of criteria; the first criterion
+ * that is met stops the run and its reason is kept. Criteria can be combined freely, e.g.
+ *   new Termination().add(Termination.maxGenerations(300)).add(Termination.stagnation(50, 1e-6))
+ * Each Termination tracks a single run, so a new one is needed for every run.
+ */
+public class Termination {
+
+    /**
+     * A reason to stop a run.
+     */
+    public interface Criterion {
+        // Returns why the run should stop, or null if it should go on
+        String check(Progress progress);
+    }
+
+    /**
+     * State of a run when it is checked.
+     */
+    public static class Progress {
+        // Number of generations evolved so far
+        public int generation;
+        // Best and mean fitness of the current population
+        public double best;
+        public double mean;
+        // Fraction of individuals with a distinct canonical form
+        public double diversity;
+        // Fitness evaluations computed since the run started
+        public long evaluations;
+        public long elapsedMillis;
+    }
+
+    private final List<Criterion> criteria = new ArrayList<Criterion>();
+    private final Progress progress = new Progress();
+    private long startMillis = -1;
+    private long startEvaluations = 0;
+    private String reason = null;
+
+    // Adds a criterion and returns this termination
+    public Termination add(Criterion criterion) {
+        criteria.add(criterion);
+        return this;
+    }
+
+    // The criteria used by GA: at most 300 generations, a perfect correlation, or no progress in
+    // best or mean fitness for 50 generations
+    public static Termination standard() {
+        return new Termination().add(maxGenerations(300)).add(targetFitness(1.0)).add(stagnation(50, 1e-9));
+    }
+
+    /* Public methods */
+
+    // Checks a run before its next generation. The first call starts the clock and the evaluation count
+    public boolean shouldStop(Population pop, int generation) throws Exception {
+        FitnessCalc fitnessCalc = pop.getIndividual(0).fitnessCalc;
+        if (startMillis < 0) {
+            startMillis = System.currentTimeMillis();
+            startEvaluations = fitnessCalc.getEvaluations();
+        }
+        progress.generation = generation;
+        updateFitness(pop);
+        progress.evaluations = fitnessCalc.getEvaluations() - startEvaluations;
+        progress.elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        for (Criterion criterion : criteria) {
+            String why = criterion.check(progress);
+            if (why != null) {
+                reason = why;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Why the run stopped, or null if it has not
+    public String getReason() {
+        return reason;
+    }
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+    /* Criteria */
+
+    // Stops after the given number of generations
+    public static Criterion maxGenerations(final int generations) {
+        return new Criterion() {
+            @Override
+            public String check(Progress progress) {
+                return progress.generation >= generations ? "reached " + generations + " generations" : null;
+            }
+        };
+    }
+
+    // Stops once the best fitness reaches the target
+    public static Criterion targetFitness(final double target) {
+        return new Criterion() {
+            @Override
+            public String check(Progress progress) {
+                return progress.best >= target ? "reached the target fitness " + target : null;
+            }
+        };
+    }
+
+    // Stops when neither the best nor the mean fitness has improved by more than epsilon
+    // for the given number of generations
+    public static Criterion stagnation(final int generations, final double epsilon) {
+        return new Criterion() {
+            private double best = Double.NEGATIVE_INFINITY;
+            private double mean = Double.NEGATIVE_INFINITY;
+            private int lastImprovement = 0;
+
+            @Override
+            public String check(Progress progress) {
+                if (progress.best > best + epsilon || progress.mean > mean + epsilon) {
+                    lastImprovement = progress.generation;
+                }
+                best = Math.max(best, progress.best);
+                mean = Math.max(mean, progress.mean);
+                return progress.generation - lastImprovement >= generations
+                        ? "no improvement for " + generations + " generations" : null;
+            }
+        };
+    }
+
+    // Stops when the fraction of distinct individuals drops below the given minimum
+    public static Criterion minDiversity(final double minimum) {
+        return new Criterion() {
+            @Override
+            public String check(Progress progress) {
+                return progress.generation > 0 && progress.diversity < minimum
+                        ? "diversity " + progress.diversity + " below " + minimum : null;
+            }
+        };
+    }
+
+    // Stops once the run has taken the given wall-clock time
+    public static Criterion timeLimit(final long millis) {
+        return new Criterion() {
+            @Override
+            public String check(Progress progress) {
+                return progress.elapsedMillis >= millis ? "ran for " + millis + " ms" : null;
+            }
+        };
+    }
+
+    // Stops once the run has computed the given number of fitness evaluations
+    public static Criterion evaluationLimit(final long evaluations) {
+        return new Criterion() {
+            @Override
+            public String check(Progress progress) {
+                return progress.evaluations >= evaluations ? "computed " + evaluations + " evaluations" : null;
+            }
+        };
+    }
+
+    /* Helpers */
+
+    private void updateFitness(Population pop) throws Exception {
+        double best = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        Set<String> distinct = new HashSet<String>();
+        for (int i = 0; i < pop.size(); i++) {
+            Individual individual = pop.getIndividual(i);
+            double fitness = individual.getFitness();
+            best = Math.max(best, fitness);
+            sum += fitness;
+            distinct.add(String.valueOf(individual.getCanonicalForm()));
+        }
+        progress.best = best;
+        progress.mean = sum / pop.size();
+        progress.diversity = (double) distinct.size() / pop.size();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.File;
+
+/**
+ * Checks that the evaluation run options of Cli train take effect in the run.
+ */
+public class CliTest {
+
+    public static void main(String[] args) throws Exception {
+        File genomes = File.createTempFile("genomes", ".txt");
+        try {
+            long batched = FitnessCalc.MODEL.getBatchedEvaluations();
+            train(genomes, "batching=true");
+            if (FitnessCalc.MODEL.getBatchedEvaluations() == batched)
+                throw new AssertionError("batching=true did not batch any evaluation");
+
+            long shared = FitnessCalc.MODEL.getSharedEvaluations();
+            train(genomes, "sharing=true");
+            if (FitnessCalc.MODEL.getSharedEvaluations() == shared)
+                throw new AssertionError("sharing=true did not share any evaluation");
+
+            long subexpressions = FitnessCalc.MODEL.getSubexpressionsComputed();
+            train(genomes, "subtreeCache=" + (16L << 20));
+            if (FitnessCalc.MODEL.getSubexpressionsComputed() == subexpressions)
+                throw new AssertionError("subtreeCache did not evaluate any subexpression");
+        } finally {
+            genomes.delete();
+            Algorithm.setConfig(GAConfig.DEFAULT);
+            Model.reset();
+        }
+        System.out.println("INFO: Cli run options take effect");
+    }
+
+    // Trains for a few generations with one run option, which is turned off again afterwards
+    private static void train(File genomes, String option) throws Exception {
+        try {
+            int status = Cli.run(new String[] { "train", "data/rg.txt", genomes.getPath(), "generations=3", option });
+            if (status != 0)
+                throw new AssertionError("train " + option + " exited with " + status);
+        } finally {
+            FitnessCalc.MODEL.setBatching(false);
+            FitnessCalc.MODEL.setSharing(false);
+            FitnessCalc.MODEL.setSubtreeCache(0);
+        }
+    }
+}
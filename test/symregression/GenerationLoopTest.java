@@ -0,0 +1,93 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+/**
+ * Checks that the generation loop of GA.evolvePopulation scores each generation together, so that
+ * the settings of the calculator scoring against Model take effect in a real run.
+ */
+public class GenerationLoopTest {
+
+    private static final int GENERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Model.load_training("data/rg.txt");
+        Model.load_validation("data/rg.txt");
+        try {
+            batching();
+            sharing();
+            subtreeCache();
+        } finally {
+            Model.reset();
+        }
+        System.out.println("INFO: Generations are scored together");
+    }
+
+    // Most evaluations of a run with batching go through BatchEvaluation
+    private static void batching() throws Exception {
+        FitnessCalc.MODEL.setBatching(true);
+        try {
+            long evaluations = FitnessCalc.MODEL.getEvaluations();
+            long batched = FitnessCalc.MODEL.getBatchedEvaluations();
+            run(7);
+            evaluations = FitnessCalc.MODEL.getEvaluations() - evaluations;
+            batched = FitnessCalc.MODEL.getBatchedEvaluations() - batched;
+            if (batched * 2 < evaluations)
+                throw new AssertionError("Only " + batched + " of " + evaluations + " evaluations were batched");
+        } finally {
+            FitnessCalc.MODEL.setBatching(false);
+        }
+    }
+
+    // A run with sharing evaluates generations with SharedEvaluation
+    private static void sharing() throws Exception {
+        FitnessCalc.MODEL.setSharing(true);
+        try {
+            long shared = FitnessCalc.MODEL.getSharedEvaluations();
+            run(7);
+            if (FitnessCalc.MODEL.getSharedEvaluations() == shared)
+                throw new AssertionError("No evaluation was shared");
+        } finally {
+            FitnessCalc.MODEL.setSharing(false);
+        }
+    }
+
+    // The subtree cache keeps values across the generations of a run: the same run computes fewer
+    // subexpressions with it than with sharing alone, and ends with the same fitness
+    private static void subtreeCache() throws Exception {
+        FitnessCalc.MODEL.setSharing(true);
+        try {
+            long computed = FitnessCalc.MODEL.getSubexpressionsComputed();
+            double fitness = run(11).getFittest().getFitness();
+            long withoutCache = FitnessCalc.MODEL.getSubexpressionsComputed() - computed;
+
+            FitnessCalc.MODEL.setSubtreeCache(64L << 20);
+            computed = FitnessCalc.MODEL.getSubexpressionsComputed();
+            double cachedFitness = run(11).getFittest().getFitness();
+            long withCache = FitnessCalc.MODEL.getSubexpressionsComputed() - computed;
+
+            if (cachedFitness != fitness)
+                throw new AssertionError("Best fitness " + cachedFitness + " with the cache, " + fitness + " without");
+            if (withCache >= withoutCache)
+                throw new AssertionError(withCache + " subexpressions computed with the cache, " + withoutCache + " without");
+        } finally {
+            FitnessCalc.MODEL.setSubtreeCache(0);
+            FitnessCalc.MODEL.setSharing(false);
+        }
+    }
+
+    // Runs GA.evolvePopulation from a seeded random population and returns the last population
+    static Population run(long seed) throws Exception {
+        Algorithm.setSeed(seed);
+        Model.getTrainingHallOfFame().clear();
+        FitnessCalc.MODEL.clearCache();
+        Population first = GA.initializePopulation(Algorithm.config().populationSize);
+        return GA.evolvePopulation(first, new Termination().add(Termination.maxGenerations(GENERATIONS)));
+    }
+}
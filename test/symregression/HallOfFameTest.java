@@ -0,0 +1,159 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that offers from many threads at once leave the archive a sequential run would, that
+ * equal scores keep the order they were offered in, as Model.getBestTrainingSolution relies on,
+ * and that an exported archive loads back.
+ */
+public class HallOfFameTest {
+
+    private static final int THREADS = 8;
+    private static final int OFFERS = 2000;
+    private static final int CAPACITY = 20;
+
+    public static void main(String[] args) throws Exception {
+        concurrentOffers();
+        equalScores();
+        exportAndLoad();
+        System.out.println("INFO: Hall of fame checks passed");
+    }
+
+    // Offers distinct scores from several threads and compares with the best distinct solutions
+    private static void concurrentOffers() throws Exception {
+        final List<List<int[]>> genes = new ArrayList<List<int[]>>();
+        final List<List<Double>> scores = new ArrayList<List<Double>>();
+        Random random = new Random(43);
+        // Best score of each distinct solution, by canonical form
+        Map<String, Double> expected = new HashMap<String, Double>();
+        for (int t = 0; t < THREADS; t++) {
+            genes.add(new ArrayList<int[]>());
+            scores.add(new ArrayList<Double>());
+            for (int i = 0; i < OFFERS; i++) {
+                int[] sol = new int[5];
+                for (int g = 0; g < sol.length; g++) sol[g] = g % 2 == 0 ? random.nextInt(8) : random.nextInt(7);
+                // Distinct scores, so that the order among threads does not matter
+                double score = (t * OFFERS + i) + random.nextDouble() / 2;
+                score = random.nextBoolean() ? score : -score;
+                genes.get(t).add(sol);
+                scores.get(t).add(score);
+                String key = key(sol);
+                Double best = expected.get(key);
+                if (best == null || best < score) expected.put(key, score);
+            }
+        }
+
+        final HallOfFame hallOfFame = new HallOfFame(CAPACITY);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> offers = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                offers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < OFFERS; i++) {
+                            hallOfFame.offer(genes.get(thread).get(i), scores.get(thread).get(i));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> offer : offers) offer.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Map.Entry<String, Double>> best = new ArrayList<Map.Entry<String, Double>>(expected.entrySet());
+        Collections.sort(best, new Comparator<Map.Entry<String, Double>>() {
+            @Override
+            public int compare(Map.Entry<String, Double> x, Map.Entry<String, Double> y) {
+                return Double.compare(y.getValue(), x.getValue());
+            }
+        });
+        List<HallOfFame.Entry> archived = hallOfFame.snapshot();
+        if (archived.size() != CAPACITY)
+            throw new AssertionError("Archived " + archived.size() + " solutions instead of " + CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            HallOfFame.Entry entry = archived.get(i);
+            if (!best.get(i).getKey().equals(key(entry.getGenes())) || best.get(i).getValue() != entry.score)
+                throw new AssertionError("Rank " + (i + 1) + " holds " + entry + " instead of " + best.get(i));
+        }
+    }
+
+    // Equal scores rank in the order they were offered, and do not displace each other
+    private static void equalScores() {
+        int[][] sols = { {0, 0, 1}, {1, 0, 2}, {2, 0, 3}, {3, 0, 1} };
+        HallOfFame hallOfFame = new HallOfFame(3);
+        for (int[] sol : sols) {
+            hallOfFame.offer(sol, 0.5);
+        }
+        List<int[]> genes = hallOfFame.getGenes();
+        for (int i = 0; i < genes.size(); i++) {
+            if (!Arrays.equals(genes.get(i), sols[i]))
+                throw new AssertionError("Rank " + (i + 1) + " holds " + Arrays.toString(genes.get(i)) + " instead of " + Arrays.toString(sols[i]));
+        }
+        if (genes.size() != 3)
+            throw new AssertionError("An equal score entered a full archive");
+
+        Model.reset();
+        try {
+            Model.getTrainingHallOfFame().offer(sols[1], 0.5);
+            Model.getTrainingHallOfFame().offer(sols[2], 0.5);
+            if (!Arrays.equals(Model.getBestTrainingSolution(), sols[1]))
+                throw new AssertionError("The best training solution is not the first one with the best value");
+        } finally {
+            Model.reset();
+        }
+    }
+
+    // Writes the archive as a genome file and reads it back
+    private static void exportAndLoad() throws Exception {
+        HallOfFame hallOfFame = new HallOfFame(3);
+        hallOfFame.offer(new int[] {0, 2, 1, 0, 3}, 0.25);
+        hallOfFame.offer(new int[] {2, 1, 3, 0, 1}, 0.75);
+        File file = File.createTempFile("halloffame", ".txt");
+        try {
+            hallOfFame.export(file.getPath());
+            List<int[]> loaded = HallOfFame.load(file.getPath());
+            List<int[]> genes = hallOfFame.getGenes();
+            if (loaded.size() != genes.size())
+                throw new AssertionError("Loaded " + loaded.size() + " solutions instead of " + genes.size());
+            for (int i = 0; i < genes.size(); i++) {
+                if (!Arrays.equals(loaded.get(i), genes.get(i)))
+                    throw new AssertionError("Loaded " + Arrays.toString(loaded.get(i)) + " instead of " + Arrays.toString(genes.get(i)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String key(int[] genes) {
+        try {
+            return Canonicalizer.canonicalForm(genes);
+        } catch (RuntimeException e) {
+            return FitnessCalc.toString(genes);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that PearsonAccumulator.merge gives the correlation of the serial accumulator whatever
+ * the split, and that CompiledGenome.correlate on a ForkJoin pool matches the serial evaluation,
+ * including going over the budget on the same genomes.
+ */
+public class ParallelCorrelationTest {
+
+    // Largest difference allowed between the merged and the serial correlation
+    private static final double TOLERANCE = 1e-12;
+    private static final int ROWS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(50);
+        mergeMatchesSerial(random);
+        parallelMatchesSerial(random);
+        System.out.println("INFO: Merged correlations match serial ones");
+    }
+
+    // Splits random pairs at random points, including empty parts, and merges the parts back
+    private static void mergeMatchesSerial(Random random) {
+        for (int trial = 0; trial < 200; trial++) {
+            int n = 2 + random.nextInt(500);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double offset = random.nextBoolean() ? 0 : 4; // Judgements on a 0 to 4 scale as well as 0 to 1
+            for (int i = 0; i < n; i++) {
+                x[i] = offset + random.nextDouble();
+                y[i] = random.nextInt(3) == 0 ? 0.5 : offset + x[i] * random.nextDouble();
+            }
+            Model.PearsonAccumulator serial = new Model.PearsonAccumulator();
+            for (int i = 0; i < n; i++) serial.add(x[i], y[i]);
+            if (Double.compare(serial.result(), Model.getPearson(x, y)) != 0)
+                throw new AssertionError("Serial accumulator " + serial.result() + " differs from getPearson " + Model.getPearson(x, y));
+
+            int parts = 1 + random.nextInt(8);
+            int[] bounds = new int[parts + 1];
+            bounds[parts] = n;
+            for (int p = 1; p < parts; p++) bounds[p] = Math.max(bounds[p - 1], random.nextInt(n + 1));
+            for (int p = 1; p < parts; p++) bounds[p] = Math.min(bounds[p], n);
+            Model.PearsonAccumulator merged = new Model.PearsonAccumulator();
+            for (int p = 0; p < parts; p++) {
+                Model.PearsonAccumulator part = new Model.PearsonAccumulator();
+                for (int i = bounds[p]; i < Math.max(bounds[p], bounds[p + 1]); i++) part.add(x[i], y[i]);
+                merged.merge(part);
+            }
+            if (!(Math.abs(merged.result() - serial.result()) <= TOLERANCE))
+                throw new AssertionError("Merged " + merged.result() + ", serial " + serial.result() + " over " + parts + " parts of " + n);
+        }
+    }
+
+    // Evaluates random genomes on a dataset of several chunks, serially and on a pool
+    private static void parallelMatchesSerial(Random random) {
+        double[] source = new double[ROWS];
+        double[][] rows = new double[ROWS][Dataset.FEATURES];
+        for (int a = 0; a < ROWS; a++) {
+            for (int c = 0; c < Dataset.FEATURES; c++) rows[a][c] = Math.round(random.nextDouble() * 1000) / 1000.0;
+            source[a] = (rows[a][0] + rows[a][2]) / 2;
+        }
+        Dataset data = Dataset.of("random", source, rows);
+        EvaluationBudget tight = new EvaluationBudget(2, 1 << 18, 0);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int exceeded = 0;
+            for (int g = 0; g < 40; g++) {
+                int[] genes = new int[15];
+                for (int i = 0; i < genes.length; i++) {
+                    genes[i] = i >= genes.length - 3 ? 4 + random.nextInt(4) : i % 2 == 0 ? random.nextInt(5) : random.nextInt(4);
+                }
+                CompiledGenome genome = CompiledGenome.compile(genes, data);
+                double serial = genome.correlate(data, EvaluationBudget.DEFAULT);
+                double parallel = genome.correlate(data, EvaluationBudget.DEFAULT, pool);
+                if (!(Math.abs(serial - parallel) <= TOLERANCE) && !(Double.isNaN(serial) && Double.isNaN(parallel)))
+                    throw new AssertionError(genome + ": parallel " + parallel + ", serial " + serial);
+
+                boolean serialExceeded = false;
+                boolean parallelExceeded = false;
+                try {
+                    genome.correlate(data, tight);
+                } catch (EvaluationBudget.Exceeded e) {
+                    serialExceeded = true;
+                }
+                try {
+                    genome.correlate(data, tight, pool);
+                } catch (EvaluationBudget.Exceeded e) {
+                    parallelExceeded = true;
+                }
+                if (serialExceeded != parallelExceeded)
+                    throw new AssertionError(genome + ": over the budget " + (serialExceeded ? "serially only" : "in parallel only"));
+                if (serialExceeded) exceeded++;
+            }
+            if (exceeded == 0)
+                throw new AssertionError("No genome went over the tight budget");
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
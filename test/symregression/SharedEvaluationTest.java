@@ -0,0 +1,85 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Random;
+
+/**
+ * Checks SharedEvaluation against CompiledGenome.correlate on random genomes: with all values
+ * kept, with a memory budget small enough to evict, and after evaluations that went over the
+ * evaluation budget.
+ */
+public class SharedEvaluationTest {
+
+    private static final int GENOMES = 300;
+
+    public static void main(String[] args) throws Exception {
+        Dataset data = Dataset.load("data/rg.txt");
+
+        SharedEvaluation all = new SharedEvaluation(data);
+        check("all values kept", all, data, new Random(42));
+        if (all.getReused() == 0)
+            throw new AssertionError("No values were reused");
+
+        SharedEvaluation evicting = new SharedEvaluation(data, 64 * 1024);
+        check("evicting", evicting, data, new Random(42));
+        if (evicting.getEvicted() == 0)
+            throw new AssertionError("No values were evicted");
+
+        // Over a tight budget, both go over on the same genomes, and what went over leaves nothing
+        // behind that changes later results
+        EvaluationBudget tight = new EvaluationBudget(3, 1 << 18, 0);
+        SharedEvaluation metered = new SharedEvaluation(data, 64 * 1024);
+        Random random = new Random(7);
+        int exceeded = 0;
+        for (int g = 0; g < GENOMES; g++) {
+            CompiledGenome genome = CompiledGenome.compile(randomGenes(random), data);
+            boolean alone = false;
+            boolean shared = false;
+            try {
+                genome.correlate(data, tight);
+            } catch (EvaluationBudget.Exceeded e) {
+                alone = true;
+            }
+            try {
+                metered.correlate(genome, tight);
+            } catch (EvaluationBudget.Exceeded e) {
+                shared = true;
+                exceeded++;
+            }
+            // Shared evaluation only charges the values it computes, so it may stay within the budget
+            if (shared && !alone)
+                throw new AssertionError(genome + " went over the budget shared but not alone");
+        }
+        if (exceeded == 0)
+            throw new AssertionError("No genome went over the tight budget");
+        check("after going over the budget", metered, data, new Random(42));
+        System.out.println("INFO: Shared evaluation matches CompiledGenome.correlate");
+    }
+
+    // Compares the shared correlation of random genomes with their correlation evaluated alone
+    private static void check(String name, SharedEvaluation shared, Dataset data, Random random) {
+        for (int g = 0; g < GENOMES; g++) {
+            CompiledGenome genome = CompiledGenome.compile(randomGenes(random), data);
+            double expected = genome.correlate(data, null);
+            double actual = shared.correlate(genome);
+            if (Double.compare(expected, actual) != 0)
+                throw new AssertionError(name + ": " + genome + " shared " + actual + ", alone " + expected);
+        }
+    }
+
+    // Genes of a random 15 gene genome, drawn from few values so that genomes share subtrees
+    private static int[] randomGenes(Random random) {
+        int[] genes = new int[15];
+        for (int i = 0; i < genes.length; i++) {
+            genes[i] = i >= genes.length - 3 ? 4 + random.nextInt(4) : i % 2 == 0 ? random.nextInt(5) : random.nextInt(7);
+        }
+        return genes;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Jorge Martinez-Gil,  Jose Manuel Chaves-Gonzalez:
+ * Transfer learning for semantic similarity measures based on symbolic regression.
+ * J. Intell. Fuzzy Syst. 45(1): 37-49 (2023)
+ *
+ * @author: Jorge Martinez-Gil
+ */
+
+package symregression;
+
+import java.util.Arrays;
+
+/**
+ * Checks that individuals evaluated together with setSharing or setBatching get exactly the
+ * fitness they get when evaluated one at a time, on a calculator with its own training data and
+ * on one scoring on several datasets at once, and on the one scoring against Model, with and
+ * without the subtree cache.
+ */
+public class SharingTest {
+
+    private static final int POPULATION = 60;
+
+    public static void main(String[] args) throws Exception {
+        Algorithm.setSeed(41);
+        Dataset data = Dataset.load("data/rg.txt");
+
+        FitnessCalc own = new FitnessCalc(data);
+        own.setSharing(true);
+        check("own training data", own, new FitnessCalc(data));
+
+        own = new FitnessCalc(data);
+        own.setBatching(true);
+        check("own training data, batched", own, new FitnessCalc(data));
+
+        own = new FitnessCalc(data);
+        own.setSharing(true);
+        own.setSubtreeCache(1 << 20);
+        check("own training data, subtree cache", own, new FitnessCalc(data));
+        check("own training data, subtree cache kept", own, new FitnessCalc(data));
+
+        // Several datasets at once, each read once for the whole batch, one after the other or in parallel
+        MultiTaskFitness tasks = new MultiTaskFitness(Arrays.asList(data, Dataset.load("data/mc.txt")),
+                MultiTaskFitness.Aggregate.MEAN, null);
+        FitnessCalc multiTask = new FitnessCalc(tasks);
+        multiTask.setBatching(true);
+        check("several datasets, batched", multiTask, new FitnessCalc(tasks));
+        tasks.setThreads(2);
+        try {
+            multiTask = new FitnessCalc(tasks);
+            multiTask.setBatching(true);
+            check("several datasets, batched in parallel", multiTask, new FitnessCalc(tasks));
+        } finally {
+            tasks.setThreads(1);
+        }
+        if (multiTask.getBatchedEvaluations() == 0)
+            throw new AssertionError("No individual was batched on several datasets");
+
+        Model.load_training("data/rg.txt");
+        FitnessCalc.MODEL.setSharing(true);
+        FitnessCalc.MODEL.setSubtreeCache(1 << 20);
+        try {
+            check("Model training data", FitnessCalc.MODEL, null);
+            if (Model.getTrainingHallOfFame().best() == null)
+                throw new AssertionError("Shared solutions were not offered to the hall of fame");
+
+            // The kept values must follow the training data when it changes
+            Model.load_training("data/mc.txt");
+            check("Model training data, reloaded", FitnessCalc.MODEL, null);
+
+            FitnessCalc.MODEL.setSharing(false);
+            FitnessCalc.MODEL.setSubtreeCache(0);
+            FitnessCalc.MODEL.setBatching(true);
+            check("Model training data, batched", FitnessCalc.MODEL, null);
+        } finally {
+            FitnessCalc.MODEL.setSharing(false);
+            FitnessCalc.MODEL.setSubtreeCache(0);
+            FitnessCalc.MODEL.setBatching(false);
+            Model.reset();
+        }
+        System.out.println("INFO: Shared and batched fitness match individual fitness");
+    }
+
+    // Evaluates a random population together with calc, then compares each fitness with that of the
+    // solution evaluated on its own by reference, or by Model.calculateTraining if reference is null
+    private static void check(String name, FitnessCalc calc, FitnessCalc reference) throws Exception {
+        Population pop = new Population(POPULATION, true, calc);
+        long before = calc.getEvaluations();
+        pop.evaluate();
+        if (calc.getEvaluations() == before)
+            throw new AssertionError(name + ": no individual was evaluated together with the others");
+
+        for (int i = 0; i < pop.size(); i++) {
+            Individual indiv = pop.getIndividual(i);
+            int[] sol = indiv.vectorizeNumeric();
+            double expected = reference != null ? reference.evaluate(sol) : Model.calculateTraining(sol, EvaluationBudget.DEFAULT);
+            if (Double.compare(indiv.getFitness(), expected) != 0)
+                throw new AssertionError(name + ": " + FitnessCalc.toString(sol) + " shared " + indiv.getFitness()
+                        + ", individually " + expected);
+        }
+    }
+}